@@ -0,0 +1,60 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 按DetailType去重：Jar级别每个jar只输出第一条 Class级别每个 jar+class+命名空间 只输出第一条
+ * 去重在收到结果时就完成 由FindingStore按名字id用BitSet判断 ALL级别不需要去重 也就不存
+ */
+abstract class AbstractFindingSink implements FindingSink {
+    protected final Writer writer;
+    protected final ServletScanner.DetailType detailType;
+    private final FindingStore store = new FindingStore();
+
+    AbstractFindingSink(Writer writer, ServletScanner.DetailType detailType) {
+        this.writer = writer;
+        this.detailType = detailType;
+    }
+
+    @Override
+    public final void accept(ServletScanner.ScannedClass finding) throws IOException {
+        boolean first = switch (detailType) {
+            case Jar -> store.markJar(finding.jarName());
+            case Class -> store.markClass(finding.jarName(), finding.className(), finding.namespace());
+            // Summary由SummaryFindingSink统计 不会走到这里
+            case ALL, Instruction, Summary -> true;
+        };
+        if (first) {
+            write(finding);
+        }
+    }
+
+    @Override
+    public final void acceptImpact(ServletScanner.ScannedClass finding, int depth) throws IOException {
+        writeImpact(finding, depth);
+    }
+
+    /**
+     * @return 是否输出位置和检测项 即ALL和Instruction级别
+     */
+    protected final boolean detailed() {
+        return detailType == ServletScanner.DetailType.ALL || detailType == ServletScanner.DetailType.Instruction;
+    }
+
+    protected abstract void write(ServletScanner.ScannedClass finding) throws IOException;
+
+    protected abstract void writeImpact(ServletScanner.ScannedClass finding, int depth) throws IOException;
+
+    /**
+     * 结尾 默认没有
+     */
+    protected void finish() throws IOException {
+    }
+
+    @Override
+    public final void close() throws IOException {
+        finish();
+        writer.flush();
+    }
+}
@@ -0,0 +1,261 @@
+package io.github.dreamlike.scanner;
+
+import io.github.dreamlike.agent.ClassMeta;
+import io.github.dreamlike.agent.Relocator;
+import io.github.dreamlike.agent.SupertypeResolver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.classfile.Attributes;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.constantpool.ClassEntry;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.attribute.CodeAttribute;
+import java.lang.classfile.attribute.StackMapFrameInfo;
+import java.lang.classfile.attribute.StackMapTableAttribute;
+import java.lang.reflect.AccessFlag;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.dreamlike.scanner.JsonLinesFindingSink.quote;
+
+/**
+ * 估算运行时用agent（RelocateTransformer）处理这些jar的开销 用来在agent和离线改写之间做选择
+ * <p>
+ * agent会对每个加载的类跑一遍ClassReader -> JakartaRelocatingClassVisitor -> SafeClassWriter
+ * 只有引用了javax.servlet/javax.validation（内部名或点分写法）的类才会真的被替换 javax自身的类会被直接跳过
+ * 所以每个jar统计：agent会处理的类数和字节数 其中会被改写的类数和字节数（原始字节上的前置匹配 和agent的判断一致）
+ * SafeClassWriter用COMPUTE_FRAMES重算栈帧 getCommonSuperClass只会在控制流汇合处合并两个不同的类类型时调用
+ * 所以用StackMapTable中的帧数和帧里非Object的类类型槽位数粗略估计汇合点数和父类查找次数
+ * 这只是启发式的估计 不是上界：重算出的帧和原来的不一定一样 一次合并也可能沿着继承链查找多个类
+ * <p>
+ * --measure 时把每个jar的class保留到扫描结束 再用transformer模块的Relocator真实转换一遍
+ * 每个jar跑MEASURE_ROUNDS轮 每轮一个新的Relocator（类层级缓存是冷的） 取最快的一轮 同时得到准确的改写类数
+ * 和agent一样逐个类转换 不预先放入同一批的层级信息 父类按应用classLoader能看到的类查找（见ScannedResolver）
+ * 并统计resolver实际被调用的次数 每次对应agent读取一个class文件
+ */
+final class AgentCostEstimator implements ClassObserver {
+    /**
+     * 和JakartaRelocatingClassVisitor中的映射一致 与--targets无关
+     */
+    static final List<String> AGENT_TARGETS = List.of("javax.servlet", "javax.validation");
+    private static final String OBJECT = "java/lang/Object";
+    private static final int MEASURE_ROUNDS = 3;
+
+    private final TargetMatcher matcher = TargetMatcher.of(AGENT_TARGETS);
+    private final boolean measure;
+    private final ConcurrentHashMap<String, JarCost> jars = new ConcurrentHashMap<>();
+    /**
+     * 只在--measure时记录 扫描到的所有类（包括javax自身） 内部名 -> 层级信息
+     */
+    private final ConcurrentHashMap<String, ClassMeta> metas = new ConcurrentHashMap<>();
+
+    AgentCostEstimator(boolean measure) {
+        this.measure = measure;
+    }
+
+    @Override
+    public void addClass(String jarName, byte[] classBytes, ClassModel classModel) {
+        String className = classModel.thisClass().asInternalName();
+        if (measure) {
+            metas.put(className, new ClassMeta(
+                    className,
+                    classModel.superclass().map(ClassEntry::asInternalName).orElse(null),
+                    classModel.interfaces().stream().map(ClassEntry::asInternalName).toArray(String[]::new),
+                    classModel.flags().has(AccessFlag.INTERFACE)
+            ));
+        }
+        // 同RelocateTransformer 不处理javax自身
+        for (String target : AGENT_TARGETS) {
+            if (className.startsWith(target.replace('.', '/'))) {
+                return;
+            }
+        }
+        int frames = 0;
+        int lookups = 0;
+        for (MethodModel method : classModel.methods()) {
+            CodeAttribute code = method.findAttribute(Attributes.code()).orElse(null);
+            if (code == null) {
+                continue;
+            }
+            StackMapTableAttribute stackMapTable = code.findAttribute(Attributes.stackMapTable()).orElse(null);
+            if (stackMapTable == null) {
+                continue;
+            }
+            for (StackMapFrameInfo frame : stackMapTable.entries()) {
+                frames++;
+                lookups += classSlots(frame.locals()) + classSlots(frame.stack());
+            }
+        }
+        boolean rewrite = matcher.match(classBytes) != 0;
+        JarCost cost = jars.computeIfAbsent(jarName, _ -> new JarCost());
+        synchronized (cost) {
+            cost.classes++;
+            cost.bytes += classBytes.length;
+            if (rewrite) {
+                cost.rewritten++;
+                cost.rewrittenBytes += classBytes.length;
+            }
+            cost.frames += frames;
+            cost.lookups += lookups;
+            if (measure) {
+                cost.classFiles.add(classBytes);
+            }
+        }
+    }
+
+    /**
+     * 数组和Object不需要查父类
+     */
+    private static int classSlots(List<StackMapFrameInfo.VerificationTypeInfo> types) {
+        int count = 0;
+        for (StackMapFrameInfo.VerificationTypeInfo type : types) {
+            if (type instanceof StackMapFrameInfo.ObjectVerificationTypeInfo object) {
+                String name = object.className().asInternalName();
+                if (name.charAt(0) != '[' && !name.equals(OBJECT)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 按会被改写的字节数从多到少输出每个jar 最后是合计
+     *
+     * @param json 为true时每个jar一行json 合计行没有jar字段 带"total":true
+     */
+    void report(Writer writer, boolean json) throws IOException {
+        TreeMap<String, JarCost> sorted = new TreeMap<>(jars);
+        JarCost total = new JarCost();
+        ArrayList<Map.Entry<String, JarCost>> entries = new ArrayList<>(sorted.entrySet());
+        for (Map.Entry<String, JarCost> entry : entries) {
+            JarCost cost = entry.getValue();
+            if (measure) {
+                cost.measure(metas);
+            }
+            total.add(cost);
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue().rewrittenBytes, a.getValue().rewrittenBytes));
+        if (!json) {
+            writer.write("=== Agent Cost ===\nJAR Name | Classes | Bytes | Rewritten | Rewritten Bytes | Frames | Supertype Lookups"
+                    + (measure ? " | Relocated | Resolved Supertypes | Relocation ms" : "") + "\n");
+        }
+        for (Map.Entry<String, JarCost> entry : entries) {
+            write(writer, json, entry.getKey(), entry.getValue());
+        }
+        write(writer, json, null, total);
+        writer.flush();
+    }
+
+    private void write(Writer writer, boolean json, String jarName, JarCost cost) throws IOException {
+        if (json) {
+            writer.write('{');
+            if (jarName == null) {
+                writer.write("\"total\":true");
+            } else {
+                writer.write("\"jar\":");
+                quote(writer, jarName);
+            }
+            writer.write(",\"classes\":" + cost.classes + ",\"bytes\":" + cost.bytes + ",\"rewritten\":" + cost.rewritten
+                    + ",\"rewrittenBytes\":" + cost.rewrittenBytes + ",\"frames\":" + cost.frames + ",\"supertypeLookups\":" + cost.lookups);
+            if (measure) {
+                writer.write(",\"relocated\":" + cost.relocated + ",\"resolvedSupertypes\":" + cost.resolved + ",\"relocationNanos\":" + cost.relocationNanos);
+            }
+            writer.write("}\n");
+            return;
+        }
+        writer.write(jarName == null ? "TOTAL" : jarName);
+        writer.write(" | " + cost.classes + " | " + cost.bytes + " | " + cost.rewritten + " | " + cost.rewrittenBytes
+                + " | " + cost.frames + " | " + cost.lookups);
+        if (measure) {
+            writer.write(" | " + cost.relocated + " | " + cost.resolved + " | " + String.format("%.3f", cost.relocationNanos / 1_000_000.0));
+        }
+        writer.write('\n');
+    }
+
+    private static final class JarCost {
+        private long classes;
+        private long bytes;
+        private long rewritten;
+        private long rewrittenBytes;
+        private long frames;
+        private long lookups;
+        private long relocated;
+        private long resolved;
+        private long relocationNanos;
+        private final ArrayList<byte[]> classFiles = new ArrayList<>();
+
+        /**
+         * 在report里单线程调用 转换完就释放class
+         */
+        private void measure(Map<String, ClassMeta> metas) {
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < MEASURE_ROUNDS; round++) {
+                ScannedResolver resolver = new ScannedResolver(metas);
+                Relocator relocator = new Relocator(false, resolver);
+                byte[][] result = new byte[classFiles.size()][];
+                long start = System.nanoTime();
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = relocator.relocate(classFiles.get(i));
+                }
+                best = Math.min(best, System.nanoTime() - start);
+                relocated = 0;
+                for (int i = 0; i < result.length; i++) {
+                    if (result[i] != classFiles.get(i)) {
+                        relocated++;
+                    }
+                }
+                resolved = resolver.calls;
+            }
+            relocationNanos = classFiles.isEmpty() ? 0 : best;
+            classFiles.clear();
+            classFiles.trimToSize();
+        }
+
+        private void add(JarCost other) {
+            classes += other.classes;
+            bytes += other.bytes;
+            rewritten += other.rewritten;
+            rewrittenBytes += other.rewrittenBytes;
+            frames += other.frames;
+            lookups += other.lookups;
+            relocated += other.relocated;
+            resolved += other.resolved;
+            relocationNanos += other.relocationNanos;
+        }
+    }
+
+    /**
+     * 模拟应用classLoader：先查扫描到的所有类 jar之间的继承不会被当成Object 再由系统classLoader查找JDK的类
+     * 查询方看到的是转换后的名字 jakarta下的类按扫描到的javax原类查找
+     * 只在report里单线程使用 所以计数不需要同步
+     */
+    private static final class ScannedResolver implements SupertypeResolver {
+        private static final SupertypeResolver JDK = SupertypeResolver.ofClassLoader(null);
+
+        private final Map<String, ClassMeta> metas;
+        private long calls;
+
+        private ScannedResolver(Map<String, ClassMeta> metas) {
+            this.metas = metas;
+        }
+
+        @Override
+        public ClassMeta resolve(String internalName) {
+            calls++;
+            ClassMeta meta = metas.get(internalName);
+            for (int i = 0; meta == null && i < AGENT_TARGETS.size(); i++) {
+                String javax = AGENT_TARGETS.get(i).replace('.', '/');
+                String jakarta = "jakarta" + javax.substring("javax".length());
+                if (internalName.startsWith(jakarta + "/")) {
+                    meta = metas.get(javax + internalName.substring(jakarta.length()));
+                }
+            }
+            return meta == null ? JDK.resolve(internalName) : meta;
+        }
+    }
+}
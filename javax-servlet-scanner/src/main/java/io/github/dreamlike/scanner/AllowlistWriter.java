@@ -0,0 +1,94 @@
+package io.github.dreamlike.scanner;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.classfile.ClassModel;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 生成agent使用的白名单（-javaagent参数 jakarta.allowlist） 读取的一方是transformer模块的Allowlist
+ * <p>
+ * 每个class都会交给它：所有类名记一个64位FNV-1a hash 原始字节上前置匹配命中agent目标的（和agent的判断一致 见AgentCostEstimator）记下内部名
+ * 每个真的被扫描过的归档（包括嵌套jar和目录中的jar）打开时记下SHA-256（整个文件 不是central directory） agent按CodeSource对应文件的摘要判断是否是已知归档
+ * 只记扫描器看到了其中每个class的归档 例如目录里的war不会被扫描 它的摘要也不能出现在白名单里 否则其中同名的类会被误跳过
+ * 目录中的class没有归档 agent对它们仍然做完整的转换
+ * <p>
+ * 文件格式：MAGIC VERSION 归档数 每个归档32字节摘要 类名hash数 排好序的hash 需要转换的类数 排好序的内部名
+ */
+final class AllowlistWriter implements ClassObserver {
+    private static final int MAGIC = 0x4A58414C;
+    private static final int VERSION = 1;
+
+    private final TargetMatcher matcher = TargetMatcher.of(AgentCostEstimator.AGENT_TARGETS);
+    private final Set<Long> scanned = ConcurrentHashMap.newKeySet();
+    private final Set<String> classes = ConcurrentHashMap.newKeySet();
+    private final Set<String> archives = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void addClass(String jarName, byte[] classBytes, ClassModel classModel) {
+        String className = classModel.thisClass().asInternalName();
+        scanned.add(hash(className));
+        if (matcher.match(classBytes) != 0) {
+            classes.add(className);
+        }
+    }
+
+    /**
+     * 嵌套jar被容器解压到磁盘后就是同样的字节
+     */
+    @Override
+    public void archive(String jarName, MemorySegment data) {
+        archives.add(HexFormat.of().formatHex(ScanCache.sha256(data)));
+    }
+
+    /**
+     * 和Allowlist.hash一致
+     */
+    static long hash(String className) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < className.length(); i++) {
+            hash ^= className.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    void write(Path path) throws IOException {
+        TreeSet<String> sortedArchives = new TreeSet<>(archives);
+        long[] hashes = scanned.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(hashes);
+        TreeSet<String> sortedClasses = new TreeSet<>(classes);
+
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(sortedArchives.size());
+            for (String digest : sortedArchives) {
+                output.write(HexFormat.of().parseHex(digest));
+            }
+            output.writeInt(hashes.length);
+            for (long hash : hashes) {
+                output.writeLong(hash);
+            }
+            output.writeInt(sortedClasses.size());
+            for (String className : sortedClasses) {
+                output.writeUTF(className);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.err.println("allowlist " + path + ": " + sortedArchives.size() + " archives, " + hashes.length + " classes, " + sortedClasses.size() + " to relocate");
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.dreamlike.scanner;
+
+import java.lang.classfile.ClassModel;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * 需要看到每一个class（不论是否命中）的分析 例如ImpactGraph和AgentCostEstimator
+ * 在扫描线程上被并发调用 有它时不会使用ScanCache 因为缓存命中的class根本不会被解压
+ */
+@FunctionalInterface
+interface ClassObserver {
+
+    /**
+     * @param classModel 每个class只解析一次 所有observer和ClassScanner共用
+     */
+    void addClass(String jarName, byte[] classBytes, ClassModel classModel);
+
+    /**
+     * 某个jar的结果按输入和条目的顺序输出时调用 在输出线程上 不会并发 同一个jar可能调用多次
+     * addClass的调用顺序不确定 需要按顺序决定的事情（例如同名类归属哪个jar）用这个顺序
+     */
+    default void emitted(String jarName) {
+    }
+
+    /**
+     * 每个真的要解析其中class的归档（包括嵌套jar和目录中的jar）打开时调用一次 在扫描线程上被并发调用
+     * 按索引输出的归档不会调用
+     *
+     * @param data 整个归档的字节 嵌套jar是解压后的内容 只在调用期间有效
+     */
+    default void archive(String jarName, MemorySegment data) {
+    }
+
+    /**
+     * @return 任意一个为null时返回另一个
+     */
+    static ClassObserver both(ClassObserver first, ClassObserver second) {
+        if (first == null || second == null) {
+            return first == null ? second : first;
+        }
+        return new ClassObserver() {
+            @Override
+            public void addClass(String jarName, byte[] classBytes, ClassModel classModel) {
+                first.addClass(jarName, classBytes, classModel);
+                second.addClass(jarName, classBytes, classModel);
+            }
+
+            @Override
+            public void emitted(String jarName) {
+                first.emitted(jarName);
+                second.emitted(jarName);
+            }
+
+            @Override
+            public void archive(String jarName, MemorySegment data) {
+                first.archive(jarName, data);
+                second.archive(jarName, data);
+            }
+        };
+    }
+}
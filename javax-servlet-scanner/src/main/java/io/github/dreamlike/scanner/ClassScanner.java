@@ -0,0 +1,371 @@
+package io.github.dreamlike.scanner;
+
+import java.lang.classfile.Annotation;
+import java.lang.classfile.Attribute;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.FieldModel;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.TypeAnnotation;
+import java.lang.classfile.attribute.CodeAttribute;
+import java.lang.classfile.attribute.ExceptionsAttribute;
+import java.lang.classfile.attribute.LineNumberInfo;
+import java.lang.classfile.attribute.LineNumberTableAttribute;
+import java.lang.classfile.attribute.RecordAttribute;
+import java.lang.classfile.attribute.RecordComponentInfo;
+import java.lang.classfile.attribute.RuntimeVisibleAnnotationsAttribute;
+import java.lang.classfile.attribute.RuntimeVisibleTypeAnnotationsAttribute;
+import java.lang.classfile.attribute.SignatureAttribute;
+import java.lang.classfile.constantpool.ClassEntry;
+import java.util.Arrays;
+
+import io.github.dreamlike.scanner.ServletScanner.Detail;
+import io.github.dreamlike.scanner.ServletScanner.Location;
+
+/**
+ * 检测规则的核心 每个class只走一遍
+ * <p>
+ * 类、方法、字段、record组件各自只遍历一次attributes 把签名、注解、异常、code属性记到局部变量里
+ * 然后按固定的顺序（和规则列表一致）判断并直接推给Findings 中间不构建Stream、Optional和lambda
+ * 方法参数直接在描述符上按区间匹配 不需要构建MethodTypeDesc
+ * 一个class只分配这一个对象（加上classfile API自身的） 方便JIT内联 native-image下也足够小
+ * <p>
+ * Instruction级别下方法上的结果会带上MethodInstructions（方法名和描述符）
+ * 方法体不再在所有命名空间都命中后停下 而是把每条命中的指令记到复用的基本类型数组里 再按命名空间拆成各自的结果
+ */
+final class ClassScanner {
+
+    /**
+     * 结果的接收方 每个命中的命名空间调用一次
+     */
+    @FunctionalInterface
+    interface Findings {
+        /**
+         * @param instructions 只有Instruction级别下的方法上的结果才有 否则为null
+         */
+        void report(String className, Location location, Detail detail, String namespace, MethodInstructions instructions);
+    }
+
+    private final String className;
+    private final ConstantPoolFilter filter;
+    private final TargetMatcher matcher;
+    private final Findings findings;
+    /**
+     * 不记录指令时为null
+     */
+    private final InstructionBuffer buffer;
+    /**
+     * 当前方法 以及它上面第一条结果时才创建的不带指令的MethodInstructions
+     */
+    private MethodModel method;
+    private MethodInstructions methodOnly;
+
+    private ClassScanner(String className, ConstantPoolFilter filter, TargetMatcher matcher, Findings findings, boolean instructions) {
+        this.className = className;
+        this.filter = filter;
+        this.matcher = matcher;
+        this.findings = findings;
+        this.buffer = instructions ? new InstructionBuffer() : null;
+    }
+
+    static void scan(byte[] classBytes, TargetMatcher matcher, Findings findings) {
+        scan(classBytes, matcher, false, findings);
+    }
+
+    /**
+     * @param instructions 是否记录方法体中每一条命中的指令 即Instruction级别
+     */
+    static void scan(byte[] classBytes, TargetMatcher matcher, boolean instructions, Findings findings) {
+        scan(classBytes, null, matcher, instructions, findings);
+    }
+
+    /**
+     * @param classModel 已经解析好的classBytes（有ClassObserver时） 为null时只在前置匹配命中后才解析
+     */
+    static void scan(byte[] classBytes, ClassModel classModel, TargetMatcher matcher, boolean instructions, Findings findings) {
+        // 绝大多数类的常量池里根本没有目标字符串 直接跳过
+        // 常量池中的Utf8是modified UTF-8 目标都是ASCII 所以可以直接在原始字节里找
+        if (matcher.match(classBytes) == 0) {
+            return;
+        }
+        if (classModel == null) {
+            classModel = ClassFile.of().parse(classBytes);
+        }
+        String className = classModel.thisClass().asInternalName().replace('/', '.');
+        ClassScanner scanner = new ClassScanner(className, new ConstantPoolFilter(classModel, matcher), matcher, findings, instructions);
+        scanner.visitClass(classModel);
+        for (MethodModel method : classModel.methods()) {
+            scanner.visitMethod(method);
+        }
+        for (FieldModel field : classModel.fields()) {
+            scanner.visitField(field);
+        }
+    }
+
+    private void visitClass(ClassModel classModel) {
+        long signature = 0;
+        RuntimeVisibleAnnotationsAttribute annotations = null;
+        RuntimeVisibleTypeAnnotationsAttribute typeAnnotations = null;
+        RecordAttribute record = null;
+        for (Attribute<?> attribute : classModel.attributes()) {
+            switch (attribute) {
+                case SignatureAttribute a -> signature |= filter.mask(a.signature());
+                case RuntimeVisibleAnnotationsAttribute a -> annotations = a;
+                case RuntimeVisibleTypeAnnotationsAttribute a -> typeAnnotations = a;
+                case RecordAttribute a -> record = a;
+                default -> {
+                }
+            }
+        }
+        //泛型
+        report(Location.Class, Detail.CLASS_GENERIC, signature, null);
+        // 继承
+        if (classModel.superclass().isPresent()) {
+            report(Location.Class, Detail.EXTEND_CLASS, filter.mask(classModel.superclass().get()), null);
+        }
+        //接口
+        for (ClassEntry classEntry : classModel.interfaces()) {
+            report(Location.Class, Detail.EXTEND_INTERFACE, filter.mask(classEntry), null);
+        }
+        // 注解
+        annotations(Location.Class, Detail.CLASS_ANNOTATION, annotations, typeAnnotations);
+        //record
+        if (record != null) {
+            for (RecordComponentInfo component : record.components()) {
+                report(Location.Class, Detail.RECORD_COMPONENT, recordComponent(component), null);
+            }
+        }
+    }
+
+    private void visitMethod(MethodModel method) {
+        this.method = method;
+        this.methodOnly = null;
+        long signature = 0;
+        ExceptionsAttribute exceptions = null;
+        RuntimeVisibleAnnotationsAttribute annotations = null;
+        RuntimeVisibleTypeAnnotationsAttribute typeAnnotations = null;
+        CodeAttribute code = null;
+        for (Attribute<?> attribute : method.attributes()) {
+            switch (attribute) {
+                case SignatureAttribute a -> signature |= filter.mask(a.signature());
+                case ExceptionsAttribute a -> exceptions = a;
+                case RuntimeVisibleAnnotationsAttribute a -> annotations = a;
+                case RuntimeVisibleTypeAnnotationsAttribute a -> typeAnnotations = a;
+                case CodeAttribute a -> code = a;
+                default -> {
+                }
+            }
+        }
+        //泛型
+        reportMethod(Detail.METHOD_GENERIC, signature);
+        //异常
+        if (exceptions != null) {
+            for (ClassEntry exception : exceptions.exceptions()) {
+                reportMethod(Detail.METHOD_EXCEPTION, filter.mask(exception));
+            }
+        }
+        //注解
+        annotations(Location.Method, Detail.METHOD_ANNOTATION, annotations, typeAnnotations);
+        //参数 描述符没命中就不需要再拆参数了
+        if (filter.mask(method.methodType()) != 0) {
+            String descriptor = method.methodType().stringValue();
+            int start = 1;
+            while (descriptor.charAt(start) != ')') {
+                int end = start;
+                while (descriptor.charAt(end) == '[') {
+                    end++;
+                }
+                end = descriptor.charAt(end) == 'L' ? descriptor.indexOf(';', end) + 1 : end + 1;
+                reportMethod(Detail.METHOD_PARAMETER, matcher.match(descriptor, start, end));
+                start = end;
+            }
+        }
+        // 方法体
+        if (code == null) {
+            return;
+        }
+        if (buffer == null) {
+            report(Location.Method, Detail.METHOD_BODY, filter.references(code), null);
+            return;
+        }
+        buffer.size = 0;
+        long mask = filter.references(code, buffer);
+        if (mask == 0) {
+            return;
+        }
+        long[] lineTable = lineTable(code);
+        String name = method.methodName().stringValue();
+        String descriptor = method.methodType().stringValue();
+        while (mask != 0) {
+            long bit = mask & -mask;
+            report(Location.Method, Detail.METHOD_BODY, bit, buffer.select(name, descriptor, bit, lineTable));
+            mask &= mask - 1;
+        }
+    }
+
+    private void visitField(FieldModel field) {
+        report(Location.Field, Detail.FIELD_TYPE, filter.mask(field.fieldType()), null);
+        long signature = 0;
+        RuntimeVisibleAnnotationsAttribute annotations = null;
+        RuntimeVisibleTypeAnnotationsAttribute typeAnnotations = null;
+        for (Attribute<?> attribute : field.attributes()) {
+            switch (attribute) {
+                case SignatureAttribute a -> signature |= filter.mask(a.signature());
+                case RuntimeVisibleAnnotationsAttribute a -> annotations = a;
+                case RuntimeVisibleTypeAnnotationsAttribute a -> typeAnnotations = a;
+                default -> {
+                }
+            }
+        }
+        report(Location.Field, Detail.FIELD_GENERIC, signature, null);
+        annotations(Location.Field, Detail.FIELD_ANNOTATION, annotations, typeAnnotations);
+    }
+
+    /**
+     * @return 组件的类型、泛型、注解引用到的命名空间掩码
+     */
+    private long recordComponent(RecordComponentInfo component) {
+        long mask = filter.mask(component.descriptor());
+        for (Attribute<?> attribute : component.attributes()) {
+            switch (attribute) {
+                case SignatureAttribute a -> mask |= filter.mask(a.signature());
+                case RuntimeVisibleAnnotationsAttribute a -> {
+                    for (Annotation annotation : a.annotations()) {
+                        mask |= filter.mask(annotation.className());
+                    }
+                }
+                case RuntimeVisibleTypeAnnotationsAttribute a -> {
+                    for (TypeAnnotation annotation : a.annotations()) {
+                        mask |= filter.mask(annotation.annotation().className());
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 每个注解单独产生结果
+     */
+    private void annotations(Location location, Detail detail, RuntimeVisibleAnnotationsAttribute annotations, RuntimeVisibleTypeAnnotationsAttribute typeAnnotations) {
+        if (annotations != null) {
+            for (Annotation annotation : annotations.annotations()) {
+                report(location, detail, filter.mask(annotation.className()));
+            }
+        }
+        if (typeAnnotations != null) {
+            for (TypeAnnotation annotation : typeAnnotations.annotations()) {
+                report(location, detail, filter.mask(annotation.annotation().className()));
+            }
+        }
+    }
+
+    private void report(Location location, Detail detail, long mask) {
+        if (location == Location.Method) {
+            reportMethod(detail, mask);
+        } else {
+            report(location, detail, mask, null);
+        }
+    }
+
+    /**
+     * 方法上不是方法体的结果 Instruction级别下带上方法名和描述符
+     */
+    private void reportMethod(Detail detail, long mask) {
+        if (mask == 0) {
+            return;
+        }
+        if (buffer != null && methodOnly == null) {
+            methodOnly = new MethodInstructions(method.methodName().stringValue(), method.methodType().stringValue());
+        }
+        report(Location.Method, detail, mask, methodOnly);
+    }
+
+    /**
+     * 掩码中的每个命名空间各产生一条结果
+     */
+    private void report(Location location, Detail detail, long mask, MethodInstructions instructions) {
+        while (mask != 0) {
+            findings.report(className, location, detail, matcher.namespace(Long.numberOfTrailingZeros(mask)), instructions);
+            mask &= mask - 1;
+        }
+    }
+
+    /**
+     * @return 按起始偏移排序的 startPc << 32 | 行号 没有LineNumberTable时为空
+     */
+    private static long[] lineTable(CodeAttribute code) {
+        long[] table = new long[0];
+        for (Attribute<?> attribute : code.attributes()) {
+            if (attribute instanceof LineNumberTableAttribute lineNumbers) {
+                int size = table.length;
+                table = Arrays.copyOf(table, size + lineNumbers.lineNumbers().size());
+                for (LineNumberInfo info : lineNumbers.lineNumbers()) {
+                    table[size++] = ((long) info.startPc() << 32) | info.lineNumber();
+                }
+            }
+        }
+        Arrays.sort(table);
+        return table;
+    }
+
+    /**
+     * 一个class内所有方法复用的指令缓冲 每个方法开始时清空
+     */
+    private static final class InstructionBuffer implements ConstantPoolFilter.InstructionRecorder {
+        private int[] offsets = new int[16];
+        private short[] opcodes = new short[16];
+        private long[] masks = new long[16];
+        private int size;
+
+        @Override
+        public void record(int offset, int opcode, long mask) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size << 1);
+                opcodes = Arrays.copyOf(opcodes, size << 1);
+                masks = Arrays.copyOf(masks, size << 1);
+            }
+            offsets[size] = offset;
+            opcodes[size] = (short) opcode;
+            masks[size] = mask;
+            size++;
+        }
+
+        /**
+         * @return 命中了bit对应命名空间的指令 数组都是刚好的大小
+         */
+        MethodInstructions select(String name, String descriptor, long bit, long[] lineTable) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if ((masks[i] & bit) != 0) {
+                    count++;
+                }
+            }
+            int[] selectedOffsets = new int[count];
+            short[] selectedOpcodes = new short[count];
+            int[] lines = new int[count];
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                if ((masks[i] & bit) != 0) {
+                    selectedOffsets[j] = offsets[i];
+                    selectedOpcodes[j] = opcodes[i];
+                    lines[j] = line(lineTable, offsets[i]);
+                    j++;
+                }
+            }
+            return new MethodInstructions(name, descriptor, selectedOffsets, selectedOpcodes, lines);
+        }
+
+        /**
+         * @return 起始偏移不大于offset的最后一项的行号
+         */
+        private static int line(long[] lineTable, int offset) {
+            // 找第一个startPc大于offset的位置
+            int index = Arrays.binarySearch(lineTable, ((long) offset << 32) | 0xFFFF_FFFFL);
+            int insertion = index >= 0 ? index + 1 : -index - 1;
+            return insertion == 0 ? MethodInstructions.NO_LINE : (int) lineTable[insertion - 1];
+        }
+    }
+}
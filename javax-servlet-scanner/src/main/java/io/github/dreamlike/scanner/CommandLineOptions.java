@@ -0,0 +1,43 @@
+package io.github.dreamlike.scanner;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 命令行中 --key=value 形式的可选参数 扫描本身的参数在scan中 其余的只有命令行用
+ *
+ * @param scan      交给Scanner的参数 见ScanOptions
+ * @param format    输出格式 text/jsonl/sarif 默认text
+ * @param output    输出文件 不指定时为null 即输出到标准输出
+ * @param daemon    是否以常驻模式运行 见ScanDaemon
+ * @param watch     常驻模式下监听的目录 逗号分隔 默认为当前目录
+ * @param port      常驻模式下查询端口 只监听回环地址 默认0即随机端口
+ * @param corpus    批量模式 输入是目录或者列表文件 见CorpusScanner
+ * @param agentCost 不输出结果 改为估算用agent处理这些jar的开销 见AgentCostEstimator
+ * @param measure   估算agent开销时 再用Relocator真实转换一遍并计时
+ * @param allowlist 同时生成agent使用的白名单 不指定时为null 见AllowlistWriter
+ * @param verify    转换后的产物（jar/war或者agent的dump目录） 不指定时为null 指定时不输出结果 改为和输入对比验证 见RelocationVerifier
+ */
+record CommandLineOptions(ScanOptions scan, FindingSink.Format format, Path output, boolean daemon, List<Path> watch, int port,
+                          boolean corpus, boolean agentCost, boolean measure, Path allowlist, Path verify) {
+
+    /**
+     * @param options 没有给出的key使用默认值 不认识的key会被忽略
+     */
+    static CommandLineOptions of(Map<String, String> options) {
+        FindingSink.Format format = FindingSink.Format.valueOf(options.getOrDefault("format", FindingSink.Format.text.name()));
+        String output = options.get("output");
+        boolean daemon = Boolean.parseBoolean(options.getOrDefault("daemon", "false"));
+        List<Path> watch = Stream.of(options.getOrDefault("watch", ".").split(",")).map(Path::of).toList();
+        int port = Integer.parseInt(options.getOrDefault("port", "0"));
+        boolean corpus = Boolean.parseBoolean(options.getOrDefault("corpus", "false"));
+        boolean agentCost = Boolean.parseBoolean(options.getOrDefault("agent-cost", "false"));
+        boolean measure = Boolean.parseBoolean(options.getOrDefault("measure", "false"));
+        String allowlist = options.get("allowlist");
+        String verify = options.get("verify");
+        return new CommandLineOptions(ScanOptions.of(options), format, output == null ? null : Path.of(output), daemon, watch, port,
+                corpus, agentCost, measure, allowlist == null ? null : Path.of(allowlist), verify == null ? null : Path.of(verify));
+    }
+}
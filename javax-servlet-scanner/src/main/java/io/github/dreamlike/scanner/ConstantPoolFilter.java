@@ -0,0 +1,201 @@
+package io.github.dreamlike.scanner;
+
+import java.lang.classfile.BootstrapMethodEntry;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.attribute.CodeAttribute;
+import java.lang.classfile.constantpool.*;
+import java.lang.classfile.instruction.ExceptionCatch;
+import java.util.Arrays;
+
+/**
+ * 以常量池为入口判断一个类是否引用了目标包
+ * <p>
+ * 先在原始字节上找目标字符串（见TargetMatcher） 找不到就直接跳过 连ClassModel都不用构建
+ * 找得到的类再给每个常量池条目算一个命名空间掩码：Utf8由内容直接匹配 其余条目由它引用的条目推导
+ * 之后字段、方法、指令只需要按下标查表 方法体直接扫描code数组里的常量池下标 不需要构建CodeModel
+ */
+final class ConstantPoolFilter {
+
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int WIDE = 0xc4;
+    private static final int IINC = 0x84;
+
+    /**
+     * 每个opcode的指令长度 0表示变长（tableswitch/lookupswitch/wide）
+     */
+    private static final byte[] INSTRUCTION_LENGTH = new byte[256];
+    /**
+     * 操作数是常量池下标的opcode 值为下标的字节数
+     */
+    private static final byte[] POOL_OPERAND = new byte[256];
+
+    static {
+        Arrays.fill(INSTRUCTION_LENGTH, (byte) 1);
+        // bipush newarray ret 以及带local下标的load/store
+        for (int op : new int[]{0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a, 0xa9, 0xbc}) {
+            INSTRUCTION_LENGTH[op] = 2;
+        }
+        // sipush ldc_w ldc2_w iinc 分支 字段 invoke new anewarray checkcast instanceof ifnull ifnonnull
+        for (int op : new int[]{0x11, 0x13, 0x14, IINC, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7}) {
+            INSTRUCTION_LENGTH[op] = 3;
+        }
+        for (int op = 0x99; op <= 0xa8; op++) {
+            INSTRUCTION_LENGTH[op] = 3;
+        }
+        INSTRUCTION_LENGTH[0xc5] = 4;
+        // invokeinterface invokedynamic goto_w jsr_w
+        for (int op : new int[]{0xb9, 0xba, 0xc8, 0xc9}) {
+            INSTRUCTION_LENGTH[op] = 5;
+        }
+        INSTRUCTION_LENGTH[TABLESWITCH] = 0;
+        INSTRUCTION_LENGTH[LOOKUPSWITCH] = 0;
+        INSTRUCTION_LENGTH[WIDE] = 0;
+
+        POOL_OPERAND[0x12] = 1;
+        // ldc_w 字段 invoke invokedynamic new anewarray checkcast instanceof multianewarray
+        // ldc2_w只可能是long/double 不会命中 所以不需要看
+        for (int op : new int[]{0x13, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xbb, 0xbd, 0xc0, 0xc1, 0xc5}) {
+            POOL_OPERAND[op] = 2;
+        }
+    }
+
+    private final TargetMatcher matcher;
+    private final long[] masks;
+    private final boolean[] resolved;
+
+    ConstantPoolFilter(ClassModel classModel, TargetMatcher matcher) {
+        ConstantPool constantPool = classModel.constantPool();
+        this.matcher = matcher;
+        this.masks = new long[constantPool.size()];
+        this.resolved = new boolean[constantPool.size()];
+        for (PoolEntry entry : constantPool) {
+            taint(entry);
+        }
+    }
+
+    TargetMatcher matcher() {
+        return matcher;
+    }
+
+    long mask(PoolEntry entry) {
+        return mask(entry.index());
+    }
+
+    long mask(int index) {
+        return index > 0 && index < masks.length ? masks[index] : 0;
+    }
+
+    /**
+     * @return 方法体里的指令和catch引用到的命名空间掩码
+     */
+    long references(CodeAttribute codeAttribute) {
+        return references(codeAttribute, null);
+    }
+
+    /**
+     * @param recorder 不为null时不会在所有命名空间都命中后提前结束 每条命中的指令和catch都会交给它
+     */
+    long references(CodeAttribute codeAttribute, InstructionRecorder recorder) {
+        long all = matcher.all();
+        long mask = 0;
+        byte[] code = codeAttribute.codeArray();
+        int pc = 0;
+        while (pc < code.length && (recorder != null || mask != all)) {
+            int opcode = code[pc] & 0xFF;
+            int index = switch (POOL_OPERAND[opcode]) {
+                case 1 -> code[pc + 1] & 0xFF;
+                case 2 -> ((code[pc + 1] & 0xFF) << 8) | (code[pc + 2] & 0xFF);
+                default -> 0;
+            };
+            long hit = mask(index);
+            if (hit != 0 && recorder != null) {
+                recorder.record(pc, opcode, hit);
+            }
+            mask |= hit;
+            pc += instructionLength(code, pc, opcode);
+        }
+        if (mask == all && recorder == null) {
+            return mask;
+        }
+        // 异常表需要解析code属性的元数据 所以放在最后
+        for (ExceptionCatch exceptionCatch : codeAttribute.exceptionHandlers()) {
+            if (exceptionCatch.catchType().isPresent()) {
+                long hit = mask(exceptionCatch.catchType().get());
+                if (hit != 0 && recorder != null) {
+                    recorder.record(codeAttribute.labelToBci(exceptionCatch.handler()), MethodInstructions.CATCH, hit);
+                }
+                mask |= hit;
+            }
+        }
+        return mask;
+    }
+
+    private long taint(PoolEntry entry) {
+        int index = entry.index();
+        if (resolved[index]) {
+            return masks[index];
+        }
+        // 正常的class里引用不会成环 万一成环了按未命中处理
+        resolved[index] = true;
+        long mask = switch (entry) {
+            case Utf8Entry utf8 -> matcher.match(utf8.stringValue());
+            case ClassEntry classEntry -> taint(classEntry.name());
+            case StringEntry stringEntry -> taint(stringEntry.utf8());
+            case MethodTypeEntry methodTypeEntry -> taint(methodTypeEntry.descriptor());
+            case NameAndTypeEntry nameAndTypeEntry -> taint(nameAndTypeEntry.type());
+            // 字段指令只关心字段的类型
+            case FieldRefEntry fieldRefEntry -> taint(fieldRefEntry.nameAndType());
+            case MemberRefEntry memberRefEntry -> taint(memberRefEntry.owner()) | taint(memberRefEntry.nameAndType());
+            case MethodHandleEntry methodHandleEntry ->
+                    taint(methodHandleEntry.reference().owner()) | taint(methodHandleEntry.reference().nameAndType());
+            // 调用点的描述符（例如lambda工厂捕获的参数类型）也算 只在描述符里出现目标类型的invokedynamic同样会命中
+            // 这条规则改变了检测结果 见ScanCache.RULE_VERSION
+            case DynamicConstantPoolEntry dynamicEntry -> taint(dynamicEntry.nameAndType()) | taint(dynamicEntry.bootstrap());
+            default -> 0L;
+        };
+        masks[index] = mask;
+        return mask;
+    }
+
+    private long taint(BootstrapMethodEntry bootstrapMethodEntry) {
+        long mask = taint(bootstrapMethodEntry.bootstrapMethod());
+        for (LoadableConstantEntry argument : bootstrapMethodEntry.arguments()) {
+            mask |= taint(argument);
+        }
+        return mask;
+    }
+
+    private static int instructionLength(byte[] code, int pc, int opcode) {
+        int length = INSTRUCTION_LENGTH[opcode];
+        if (length != 0) {
+            return length;
+        }
+        if (opcode == WIDE) {
+            return (code[pc + 1] & 0xFF) == IINC ? 6 : 4;
+        }
+        // switch的操作数按4字节对齐
+        int operands = (pc + 4) & ~3;
+        if (opcode == TABLESWITCH) {
+            int low = readInt(code, operands + 4);
+            int high = readInt(code, operands + 8);
+            return operands - pc + 12 + (high - low + 1) * 4;
+        }
+        int pairs = readInt(code, operands + 4);
+        return operands - pc + 8 + pairs * 8;
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return (code[offset] << 24) | ((code[offset + 1] & 0xFF) << 16) | ((code[offset + 2] & 0xFF) << 8) | (code[offset + 3] & 0xFF);
+    }
+
+    /**
+     * 接收方法体里每一条命中的指令
+     */
+    interface InstructionRecorder {
+        /**
+         * @param opcode 指令的opcode 异常表中的catch为MethodInstructions.CATCH
+         */
+        void record(int offset, int opcode, long mask);
+    }
+}
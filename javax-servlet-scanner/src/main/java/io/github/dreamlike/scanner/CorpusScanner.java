@@ -0,0 +1,176 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * 批量扫描整个制品库（或者本地的 ~/.m2）
+ * <p>
+ * 同一个jar常常以不同的坐标出现很多次 所以先并行算出每个归档的摘要（同ScanCache 是central directory的SHA-256
+ * central directory里有每个条目的crc 只需要读文件尾部） 每个不同的摘要只扫描一次
+ * 扫描由threads个驱动线程发起 解析都在ParallelJarScanner共享的ForkJoinPool上 多个归档之间互相窃取任务
+ * 输出时按路径顺序 把代表归档的结果归到每一个摘要相同的路径上 所以耗时只和不重复的内容有关
+ * 扫描按代表路径的顺序提交 最多领先输出位置 threads * WINDOW_PER_THREAD 个摘要 每个摘要的结果在它的最后一个路径输出后释放
+ * 所以内存里只有窗口内的结果和后面还有重复路径的结果 不会攒下整个制品库的结果
+ * <p>
+ * 单个归档打不开或者扫描失败只会打印错误并跳过 不影响其他归档
+ * <p>
+ * 扫描结束后每个摘要命中的命名空间保存在namespaces中 用于生成DigestIndex 扫描失败的归档不在其中
+ */
+final class CorpusScanner {
+    private static final int WINDOW_PER_THREAD = 2;
+
+    private final ParallelJarScanner scanner;
+    private final int threads;
+    private final HashMap<String, Set<String>> namespaces = new HashMap<>();
+
+    CorpusScanner(ParallelJarScanner scanner, int threads) {
+        this.scanner = scanner;
+        this.threads = threads;
+    }
+
+    /**
+     * @param root 目录（递归找出所有的jar/war/ear/jmod）或者每行一个路径的列表文件
+     */
+    static List<Path> artifacts(Path root) throws IOException {
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                return paths.filter(Files::isRegularFile)
+                        .filter(p -> {
+                            String name = p.getFileName().toString();
+                            return name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".ear") || name.endsWith(".jmod");
+                        })
+                        .sorted()
+                        .toList();
+            }
+        }
+        return Files.readAllLines(root, StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(Path::of)
+                .toList();
+    }
+
+    void scan(List<Path> artifacts, FindingSink sink) throws IOException {
+        ExecutorService drivers = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<String>> digests = new ArrayList<>(artifacts.size());
+            for (Path artifact : artifacts) {
+                digests.add(drivers.submit(() -> digest(artifact)));
+            }
+            // 摘要 -> 第一个出现的路径
+            LinkedHashMap<String, Path> representatives = new LinkedHashMap<>();
+            String[] digestOf = new String[artifacts.size()];
+            for (int i = 0; i < artifacts.size(); i++) {
+                digestOf[i] = get(digests.get(i), artifacts.get(i));
+                if (digestOf[i] != null) {
+                    representatives.putIfAbsent(digestOf[i], artifacts.get(i));
+                }
+            }
+            System.err.println(artifacts.size() + " artifacts, " + representatives.size() + " unique");
+
+            // 按第一次出现的路径排序的摘要 以及每个摘要最后一次出现的路径
+            ArrayList<String> order = new ArrayList<>(representatives.keySet());
+            HashMap<String, Integer> rank = new HashMap<>();
+            for (int r = 0; r < order.size(); r++) {
+                rank.put(order.get(r), r);
+            }
+            HashMap<String, Integer> lastPath = new HashMap<>();
+            for (int i = 0; i < artifacts.size(); i++) {
+                if (digestOf[i] != null) {
+                    lastPath.put(digestOf[i], i);
+                }
+            }
+            int window = threads * WINDOW_PER_THREAD;
+            int submitted = 0;
+            HashMap<String, Future<List<ServletScanner.ScannedClass>>> results = new HashMap<>();
+            for (int i = 0; i < artifacts.size(); i++) {
+                if (digestOf[i] == null) {
+                    continue;
+                }
+                for (int needed = Math.min(order.size(), rank.get(digestOf[i]) + window + 1); submitted < needed; submitted++) {
+                    Path representative = representatives.get(order.get(submitted));
+                    results.put(order.get(submitted), drivers.submit(() -> {
+                        ArrayList<ServletScanner.ScannedClass> findings = new ArrayList<>();
+                        scanner.scan(List.of(representative), FindingSink.of(findings::add));
+                        return findings;
+                    }));
+                }
+                List<ServletScanner.ScannedClass> findings = get(results.get(digestOf[i]), artifacts.get(i));
+                if (i == lastPath.get(digestOf[i])) {
+                    results.remove(digestOf[i]);
+                }
+                if (findings == null) {
+                    continue;
+                }
+                if (!namespaces.containsKey(digestOf[i])) {
+                    // 包括嵌套jar的结果 整个归档作为一条记录
+                    TreeSet<String> hit = new TreeSet<>();
+                    for (ServletScanner.ScannedClass finding : findings) {
+                        hit.add(finding.namespace());
+                    }
+                    namespaces.put(digestOf[i], hit);
+                }
+                String representative = representatives.get(digestOf[i]).toString();
+                String jarName = artifacts.get(i).toString();
+                for (ServletScanner.ScannedClass finding : findings) {
+                    // 嵌套jar的名字是条目名 和外层路径无关 不需要改
+                    sink.accept(finding.jarName().equals(representative)
+                            ? finding.withJarName(jarName)
+                            : finding);
+                }
+            }
+        } finally {
+            drivers.shutdownNow();
+        }
+    }
+
+    /**
+     * @return 摘要 -> 这个归档（包括嵌套jar）命中的命名空间 干净的归档是空集合
+     */
+    Map<String, Set<String>> namespaces() {
+        return namespaces;
+    }
+
+    /**
+     * 算摘要只需要读central directory 用confined arena 算完立刻解除映射 避免成千上万个映射等GC
+     */
+    private static String digest(Path artifact) throws IOException {
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(artifact, StandardOpenOption.READ)) {
+            return ScanCache.digest(ZipArchive.open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena)).centralDirectory());
+        }
+    }
+
+    /**
+     * @return 失败时打印错误并返回null
+     */
+    private static <T> T get(Future<T> future, Path artifact) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            System.err.println("can not scan " + artifact + ": " + e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.dreamlike.scanner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * 离线的已知归档索引 记录已经扫描过的jar是干净的还是命中了哪些命名空间
+ * 大多数war里是Jackson、Guava、Netty这类结果永远不变的三方jar 命中索引的jar（包括嵌套jar）直接按索引输出 不再解析其中的class
+ * <p>
+ * key和CorpusScanner、ScanCache一样是central directory的SHA-256 所以可以由一次 --corpus --write-index 扫描生成
+ * 文件是按摘要排序的定长记录：32字节摘要 + 8字节命名空间掩码（第i位是排序后的第i个目标） 加载后用二分查找 每个jar 40字节
+ * 文件头记录了RULE_VERSION和目标集合 对不上时整个索引被忽略
+ * <p>
+ * 命中的干净jar不输出任何东西 受影响的jar每个命名空间输出一条KNOWN_AFFECTED 类名是"*" 表示整个归档
+ * 和ScanCache一起使用时命中的结果同样写进缓存 否则包含它的父jar的缓存记录永远不完整
+ * <p>
+ * 嵌套jar要先拿到自己的central directory才能查索引 DEFLATED的嵌套jar因此仍然要整个解压一遍 省下的只是解析class的开销
+ * STORED的嵌套jar（Spring Boot的BOOT-INF/lib）是原归档中的一段切片 不需要解压
+ */
+final class DigestIndex {
+    static final String ARCHIVE = "*";
+    private static final int MAGIC = 0x4A584458;
+    private static final int DIGEST_SIZE = 32;
+
+    private final String targets;
+    /**
+     * 排序后的目标 掩码的第i位对应第i个
+     */
+    private final List<String> namespaces;
+    /**
+     * 所有摘要依次拼在一起
+     */
+    private final byte[] digests;
+    private final long[] masks;
+
+    private DigestIndex(String targets, byte[] digests, long[] masks) {
+        this.targets = targets;
+        this.namespaces = List.of(targets.split(","));
+        this.digests = digests;
+        this.masks = masks;
+    }
+
+    /**
+     * @return 文件损坏或者规则版本不同时返回null
+     */
+    static DigestIndex load(Path path) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC || input.readInt() != ScanCache.RULE_VERSION) {
+                System.err.println("ignore digest index " + path + ": built by another scanner version");
+                return null;
+            }
+            String targets = input.readUTF();
+            int count = input.readInt();
+            byte[] digests = new byte[Math.multiplyExact(count, DIGEST_SIZE)];
+            long[] masks = new long[count];
+            for (int i = 0; i < count; i++) {
+                input.readFully(digests, i * DIGEST_SIZE, DIGEST_SIZE);
+                masks[i] = input.readLong();
+            }
+            return new DigestIndex(targets, digests, masks);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("ignore broken digest index " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @param namespaces 摘要（十六进制 同ScanCache.digest）-> 命中的命名空间 干净的jar是空集合
+     */
+    static void write(Path path, List<String> targets, Map<String, Set<String>> namespaces) throws IOException {
+        String targetSet = ScanCache.targetSet(targets);
+        List<String> sorted = List.of(targetSet.split(","));
+        // 小写十六进制的字典序就是摘要字节的无符号序
+        TreeMap<String, Set<String>> records = new TreeMap<>(namespaces);
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(ScanCache.RULE_VERSION);
+            output.writeUTF(targetSet);
+            output.writeInt(records.size());
+            for (Map.Entry<String, Set<String>> record : records.entrySet()) {
+                output.write(HexFormat.of().parseHex(record.getKey()));
+                long mask = 0;
+                for (String namespace : record.getValue()) {
+                    int bit = sorted.indexOf(namespace);
+                    if (bit >= 0) {
+                        mask |= 1L << bit;
+                    }
+                }
+                output.writeLong(mask);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 和顺序无关的目标集合 同ScanCache.targetSet
+     */
+    String targets() {
+        return targets;
+    }
+
+    /**
+     * @return 记录的下标 不在索引中时返回-1
+     */
+    int find(MemorySegment centralDirectory) {
+        byte[] digest = ScanCache.sha256(centralDirectory);
+        int low = 0;
+        int high = masks.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(digests, mid * DIGEST_SIZE, (mid + 1) * DIGEST_SIZE, digest, 0, DIGEST_SIZE);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按索引输出这个jar的结果
+     *
+     * @param record find返回的下标
+     */
+    void report(int record, String jarName, Consumer<ServletScanner.ScannedClass> sink) {
+        for (ScanCache.Finding finding : findings(record)) {
+            sink.accept(new ServletScanner.ScannedClass(jarName, finding.className(), finding.location(), finding.detail(), finding.namespace()));
+        }
+    }
+
+    /**
+     * @param record find返回的下标
+     * @return 这个jar的结果 和report输出的一致 写进缓存用
+     */
+    List<ScanCache.Finding> findings(int record) {
+        ArrayList<ScanCache.Finding> findings = new ArrayList<>(Long.bitCount(masks[record]));
+        long mask = masks[record];
+        while (mask != 0) {
+            String namespace = namespaces.get(Long.numberOfTrailingZeros(mask));
+            findings.add(new ScanCache.Finding(ARCHIVE, ServletScanner.Location.Class, ServletScanner.Detail.KNOWN_AFFECTED, namespace));
+            mask &= mask - 1;
+        }
+        return findings;
+    }
+}
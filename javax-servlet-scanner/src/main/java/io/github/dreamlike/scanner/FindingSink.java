@@ -0,0 +1,72 @@
+package io.github.dreamlike.scanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 扫描结果的输出端 每扫描完一个class就会收到它的结果 不会等整个归档扫描完
+ * ParallelJarScanner保证accept不会被并发调用 并且调用顺序是确定的
+ * close时写出结尾（如果格式需要）并flush 但不会关闭底层的writer
+ */
+public interface FindingSink extends Closeable {
+
+    void accept(ServletScanner.ScannedClass finding) throws IOException;
+
+    /**
+     * 传递影响分析的结果（见ImpactGraph） 在所有直接命中的结果之后输出 不参与DetailType去重
+     *
+     * @param depth 到最近的直接命中类的引用距离 从1开始
+     */
+    void acceptImpact(ServletScanner.ScannedClass finding, int depth) throws IOException;
+
+    /**
+     * 把结果交给consumer 不输出任何东西 用于需要先收集结果的场景
+     */
+    static FindingSink of(Consumer<ServletScanner.ScannedClass> consumer) {
+        return new FindingSink() {
+            @Override
+            public void accept(ServletScanner.ScannedClass finding) {
+                consumer.accept(finding);
+            }
+
+            @Override
+            public void acceptImpact(ServletScanner.ScannedClass finding, int depth) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * 只扫描默认的 javax.servlet 时使用
+     */
+    static FindingSink create(Format format, ServletScanner.DetailType detailType, Writer writer) throws IOException {
+        return create(format, detailType, writer, List.of(ServletScanner.DEFAULT_TARGET));
+    }
+
+    /**
+     * @param targets 扫描的命名空间 只有一个时text格式和原来一样没有Namespace列
+     */
+    static FindingSink create(Format format, ServletScanner.DetailType detailType, Writer writer, List<String> targets) throws IOException {
+        if (detailType == ServletScanner.DetailType.Summary && format != Format.sarif) {
+            return new SummaryFindingSink(writer, format == Format.jsonl);
+        }
+        return switch (format) {
+            case text -> new TextFindingSink(writer, detailType, targets.size() > 1);
+            case jsonl -> new JsonLinesFindingSink(writer, detailType);
+            // SARIF面向的是静态分析平台 总是输出每一条结果
+            case sarif -> new SarifFindingSink(writer);
+        };
+    }
+
+    enum Format {
+        text,
+        jsonl,
+        sarif
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.dreamlike.scanner;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Jar/Class级别的去重状态 不保存结果本身 结果在去重后马上写出
+ * jar名、类名、命名空间都intern成int id 去重用BitSet test-and-set完成：jar直接以jar id为下标
+ * class先把 (jar id, class id) 映射成连续的pair id 每个pair一个long 按命名空间id置位
+ * 不用 pair id * 64 + 命名空间id 做BitSet下标 那样超过三千多万个pair就会溢出int
+ * 所以内存只跟不同的名字数量有关 跟结果条数无关
+ * 不是线程安全的 FindingSink本来就不会被并发调用
+ */
+final class FindingStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final StringDictionary jars = new StringDictionary();
+    private final StringDictionary classes = new StringDictionary();
+    private final StringDictionary namespaces = new StringDictionary();
+
+    private final BitSet jarSeen = new BitSet();
+
+    /**
+     * (jar id << 32 | class id) -> pair id 的开放寻址表 pairSlots存pair id + 1
+     * pairNamespaces和pairKeys下标相同 记录这个pair已经出现过的命名空间
+     */
+    private long[] pairKeys = new long[INITIAL_CAPACITY];
+    private long[] pairNamespaces = new long[INITIAL_CAPACITY];
+    private int[] pairSlots = new int[INITIAL_CAPACITY * 2];
+    private int pairCount;
+
+    /**
+     * @return 是否是这个jar的第一条结果
+     */
+    boolean markJar(String jarName) {
+        return testAndSet(jarSeen, jars.intern(jarName));
+    }
+
+    /**
+     * @return 是否是这个 jar+class+命名空间 的第一条结果
+     */
+    boolean markClass(String jarName, String className, String namespace) {
+        int namespaceId = namespaces.intern(namespace);
+        // TargetMatcher最多64个命名空间
+        if (namespaceId >= TargetMatcher.MAX_NAMESPACES) {
+            throw new IllegalStateException("more than " + TargetMatcher.MAX_NAMESPACES + " namespaces in findings: " + namespace);
+        }
+        int pair = pairId(jars.intern(jarName), classes.intern(className));
+        long mask = 1L << namespaceId;
+        if ((pairNamespaces[pair] & mask) != 0) {
+            return false;
+        }
+        pairNamespaces[pair] |= mask;
+        return true;
+    }
+
+    private static boolean testAndSet(BitSet bits, int index) {
+        if (bits.get(index)) {
+            return false;
+        }
+        bits.set(index);
+        return true;
+    }
+
+    private int pairId(int jar, int clazz) {
+        long key = ((long) jar << 32) | (clazz & 0xFFFFFFFFL);
+        int mask = pairSlots.length - 1;
+        int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+        while (pairSlots[slot] != 0) {
+            int id = pairSlots[slot] - 1;
+            if (pairKeys[id] == key) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = pairCount++;
+        if (id == pairKeys.length) {
+            pairKeys = Arrays.copyOf(pairKeys, pairKeys.length << 1);
+            pairNamespaces = Arrays.copyOf(pairNamespaces, pairNamespaces.length << 1);
+        }
+        pairKeys[id] = key;
+        pairSlots[slot] = id + 1;
+        if (pairCount * 2 > pairSlots.length) {
+            int[] newSlots = new int[pairSlots.length << 1];
+            int newMask = newSlots.length - 1;
+            for (int i = 0; i < pairCount; i++) {
+                int s = Long.hashCode(pairKeys[i] * 0x9E3779B97F4A7C15L) & newMask;
+                while (newSlots[s] != 0) {
+                    s = (s + 1) & newMask;
+                }
+                newSlots[s] = i + 1;
+            }
+            pairSlots = newSlots;
+        }
+        return id;
+    }
+}
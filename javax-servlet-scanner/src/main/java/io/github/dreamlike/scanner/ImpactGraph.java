@@ -0,0 +1,315 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.lang.classfile.ClassModel;
+import java.lang.classfile.FieldModel;
+import java.lang.classfile.MethodModel;
+import java.lang.classfile.constantpool.ClassEntry;
+import java.lang.classfile.constantpool.NameAndTypeEntry;
+import java.lang.classfile.constantpool.PoolEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * 传递影响分析
+ * <p>
+ * 扫描时记录每个类引用了哪些类（常量池里的ClassEntry、NameAndType的描述符、字段和方法的描述符）
+ * 类名intern成int节点 边存在两个int数组里 扫描结束后转成反向的CSR（被引用者 -> 引用者）
+ * 然后对每个命名空间 以直接命中的类为起点做多源BFS 得到每个受影响的类和它到最近的直接命中类的距离
+ * <p>
+ * 同名类出现在多个jar里时按一个节点处理 归属输出顺序（输入和条目的顺序 见ClassObserver.emitted）中第一个定义它的jar
+ * addClass的先后取决于线程调度 所以重复的定义先记下来 到report时再按jar的输出顺序决定归属
+ * 没有被扫描到的类（JDK、javax本身）没有出边 只会作为终点出现 不会被报告
+ * addClass会被扫描线程并发调用
+ */
+final class ImpactGraph implements ClassObserver {
+    private static final int NO_JAR = -1;
+    private static final int NO_RANK = Integer.MAX_VALUE;
+
+    private final StringDictionary nodes = new StringDictionary();
+    private final StringDictionary jars = new StringDictionary();
+    private int[] definedIn = new int[1024];
+    /**
+     * 已经有归属的类在别的jar里的定义 两个数组一一对应
+     */
+    private int[] otherNodes = new int[16];
+    private int[] otherJars = new int[16];
+    private int otherCount;
+    /**
+     * jar的序号 -> 第一次输出的次序 还没输出过的是NO_RANK
+     */
+    private int[] jarRanks = new int[16];
+    private int nextRank;
+    private int[] edgeFrom = new int[4096];
+    private int[] edgeTo = new int[4096];
+    private int edgeCount;
+
+    private final StringDictionary namespaces = new StringDictionary();
+    /**
+     * 每个命名空间直接命中的节点
+     */
+    private final ArrayList<int[]> directNodes = new ArrayList<>();
+    private final ArrayList<Integer> directCounts = new ArrayList<>();
+
+    ImpactGraph() {
+        Arrays.fill(definedIn, NO_JAR);
+        Arrays.fill(jarRanks, NO_RANK);
+    }
+
+    @Override
+    public void addClass(String jarName, byte[] classBytes, ClassModel classModel) {
+        add(jarName, classModel.thisClass().asInternalName(), references(classModel));
+    }
+
+    @Override
+    public synchronized void emitted(String jarName) {
+        int jar = jar(jarName);
+        if (jarRanks[jar] == NO_RANK) {
+            jarRanks[jar] = nextRank++;
+        }
+    }
+
+    /**
+     * @return 引用到的类的内部名 同一个类在描述符里会反复出现 所以是去重后的集合
+     */
+    static HashSet<String> references(ClassModel classModel) {
+        HashSet<String> references = new HashSet<>();
+        for (PoolEntry entry : classModel.constantPool()) {
+            switch (entry) {
+                case ClassEntry classEntry -> addType(references, classEntry.asInternalName());
+                case NameAndTypeEntry nameAndTypeEntry -> addDescriptor(references, nameAndTypeEntry.type().stringValue());
+                default -> {
+                }
+            }
+        }
+        for (FieldModel field : classModel.fields()) {
+            addDescriptor(references, field.fieldType().stringValue());
+        }
+        for (MethodModel method : classModel.methods()) {
+            addDescriptor(references, method.methodType().stringValue());
+        }
+        return references;
+    }
+
+    /**
+     * 解析在锁外完成 这里只负责写入节点和边
+     *
+     * @param references 引用到的类的内部名
+     */
+    synchronized void add(String jarName, String className, Collection<String> references) {
+        int self = node(className);
+        int jar = jar(jarName);
+        if (definedIn[self] == NO_JAR) {
+            definedIn[self] = jar;
+        } else if (definedIn[self] != jar) {
+            if (otherCount == otherNodes.length) {
+                otherNodes = Arrays.copyOf(otherNodes, otherCount << 1);
+                otherJars = Arrays.copyOf(otherJars, otherCount << 1);
+            }
+            otherNodes[otherCount] = self;
+            otherJars[otherCount] = jar;
+            otherCount++;
+        }
+        for (String reference : references) {
+            int target = node(reference);
+            if (target == self) {
+                continue;
+            }
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edgeCount << 1);
+                edgeTo = Arrays.copyOf(edgeTo, edgeCount << 1);
+            }
+            edgeFrom[edgeCount] = self;
+            edgeTo[edgeCount] = target;
+            edgeCount++;
+        }
+    }
+
+    /**
+     * 包装一个sink 直接命中的结果在输出的同时记为BFS的起点
+     */
+    FindingSink recording(FindingSink sink) {
+        return new FindingSink() {
+            @Override
+            public void accept(ServletScanner.ScannedClass finding) throws IOException {
+                markDirect(finding.className().replace('.', '/'), finding.namespace());
+                sink.accept(finding);
+            }
+
+            @Override
+            public void acceptImpact(ServletScanner.ScannedClass finding, int depth) throws IOException {
+                sink.acceptImpact(finding, depth);
+            }
+
+            @Override
+            public void close() throws IOException {
+                sink.close();
+            }
+        };
+    }
+
+    /**
+     * 计算并输出所有间接受影响的类 按命名空间、深度、类名排序
+     */
+    synchronized void report(FindingSink sink) throws IOException {
+        for (int i = 0; i < otherCount; i++) {
+            if (before(otherJars[i], definedIn[otherNodes[i]])) {
+                definedIn[otherNodes[i]] = otherJars[i];
+            }
+        }
+        otherCount = 0;
+        int nodeCount = nodes.size();
+        // 反向CSR：offsets[n]..offsets[n+1] 是引用了n的节点
+        int[] offsets = new int[nodeCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[edgeTo[i] + 1]++;
+        }
+        for (int n = 0; n < nodeCount; n++) {
+            offsets[n + 1] += offsets[n];
+        }
+        int[] dependents = new int[edgeCount];
+        int[] cursor = Arrays.copyOf(offsets, nodeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            dependents[cursor[edgeTo[i]]++] = edgeFrom[i];
+        }
+
+        int[] depth = new int[nodeCount];
+        int[] queue = new int[nodeCount];
+        int[] byRank = null;
+        int[] rank = null;
+        for (int ns = 0; ns < namespaces.size(); ns++) {
+            Arrays.fill(depth, -1);
+            int head = 0;
+            int tail = 0;
+            int[] direct = directNodes.get(ns);
+            for (int i = 0; i < directCounts.get(ns); i++) {
+                if (depth[direct[i]] < 0) {
+                    depth[direct[i]] = 0;
+                    queue[tail++] = direct[i];
+                }
+            }
+            int directTail = tail;
+            while (head < tail) {
+                int current = queue[head++];
+                for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                    int dependent = dependents[i];
+                    if (depth[dependent] < 0) {
+                        depth[dependent] = depth[current] + 1;
+                        queue[tail++] = dependent;
+                    }
+                }
+            }
+            // 按 深度+类名 排序保证输出稳定 排序键是 depth<<32|类名的序号 这样只需要排long数组
+            if (rank == null && tail > directTail) {
+                byRank = sortedByName();
+                rank = new int[nodeCount];
+                for (int i = 0; i < nodeCount; i++) {
+                    rank[byRank[i]] = i;
+                }
+            }
+            long[] affected = new long[tail - directTail];
+            for (int i = directTail; i < tail; i++) {
+                affected[i - directTail] = ((long) depth[queue[i]] << 32) | rank[queue[i]];
+            }
+            Arrays.sort(affected);
+            String namespace = namespaces.value(ns);
+            for (long key : affected) {
+                int n = byRank[(int) key];
+                if (definedIn[n] == NO_JAR) {
+                    continue;
+                }
+                sink.acceptImpact(new ServletScanner.ScannedClass(jars.value(definedIn[n]), nodes.value(n).replace('/', '.'),
+                        ServletScanner.Location.Class, ServletScanner.Detail.TRANSITIVE_DEPENDENCY, namespace), (int) (key >>> 32));
+            }
+        }
+    }
+
+    /**
+     * @return 按类名字典序排列的节点
+     */
+    private int[] sortedByName() {
+        int nodeCount = nodes.size();
+        String[] names = new String[nodeCount];
+        for (int n = 0; n < nodeCount; n++) {
+            names[n] = nodes.value(n);
+        }
+        Arrays.sort(names);
+        int[] sorted = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            sorted[i] = nodes.intern(names[i]);
+        }
+        return sorted;
+    }
+
+    private synchronized void markDirect(String className, String namespace) {
+        int ns = namespaces.intern(namespace);
+        if (ns == directNodes.size()) {
+            directNodes.add(new int[16]);
+            directCounts.add(0);
+        }
+        int[] direct = directNodes.get(ns);
+        int count = directCounts.get(ns);
+        if (count == direct.length) {
+            direct = Arrays.copyOf(direct, count << 1);
+            directNodes.set(ns, direct);
+        }
+        direct[count] = node(className);
+        directCounts.set(ns, count + 1);
+    }
+
+    /**
+     * 先按输出的次序 没有输出过的jar（理论上不会有）按名字 保证结果稳定
+     */
+    private boolean before(int jar, int other) {
+        if (jarRanks[jar] != jarRanks[other]) {
+            return jarRanks[jar] < jarRanks[other];
+        }
+        return jars.value(jar).compareTo(jars.value(other)) < 0;
+    }
+
+    private int jar(String jarName) {
+        int id = jars.intern(jarName);
+        if (id == jarRanks.length) {
+            jarRanks = Arrays.copyOf(jarRanks, id << 1);
+            Arrays.fill(jarRanks, id, jarRanks.length, NO_RANK);
+        }
+        return id;
+    }
+
+    private int node(String internalName) {
+        int id = nodes.intern(internalName);
+        if (id == definedIn.length) {
+            int oldLength = definedIn.length;
+            definedIn = Arrays.copyOf(definedIn, oldLength << 1);
+            Arrays.fill(definedIn, oldLength, definedIn.length, NO_JAR);
+        }
+        return id;
+    }
+
+    private static void addType(HashSet<String> references, String internalName) {
+        // 数组类型的ClassEntry是描述符形式
+        if (internalName.startsWith("[")) {
+            addDescriptor(references, internalName);
+        } else {
+            references.add(internalName);
+        }
+    }
+
+    private static void addDescriptor(HashSet<String> references, String descriptor) {
+        int i = 0;
+        while (i < descriptor.length()) {
+            if (descriptor.charAt(i) == 'L') {
+                int end = descriptor.indexOf(';', i);
+                if (end < 0) {
+                    return;
+                }
+                references.add(descriptor.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+}
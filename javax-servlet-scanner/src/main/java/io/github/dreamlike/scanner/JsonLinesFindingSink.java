@@ -0,0 +1,116 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 每行一个json对象 字段随DetailType变化：
+ * Jar   {"jar"}
+ * Class {"jar","class","namespace"}
+ * ALL   {"jar","class","location","namespace","detail","message"}
+ * Instruction 在ALL的基础上 方法上的结果多 "method","descriptor" 方法体的结果再多 "instructions":[{"offset","opcode","line"}]
+ * 没有行号时不输出line
+ * 传递影响的结果不分级别 {"jar","class","namespace","detail":"TRANSITIVE_DEPENDENCY","depth"}
+ */
+final class JsonLinesFindingSink extends AbstractFindingSink {
+
+    JsonLinesFindingSink(Writer writer, ServletScanner.DetailType detailType) {
+        super(writer, detailType);
+    }
+
+    @Override
+    protected void write(ServletScanner.ScannedClass finding) throws IOException {
+        writer.write("{\"jar\":");
+        quote(writer, finding.jarName());
+        if (detailType != ServletScanner.DetailType.Jar) {
+            writer.write(",\"class\":");
+            quote(writer, finding.className());
+        }
+        if (detailed()) {
+            writer.write(",\"location\":\"");
+            writer.write(finding.location().name());
+            writer.write('"');
+        }
+        if (detailType != ServletScanner.DetailType.Jar) {
+            writer.write(",\"namespace\":");
+            quote(writer, finding.namespace());
+        }
+        if (detailed()) {
+            writer.write(",\"detail\":\"");
+            writer.write(finding.detail().name());
+            writer.write("\",\"message\":");
+            quote(writer, finding.detail().describe(finding.namespace()));
+        }
+        if (finding.instructions() != null && detailType == ServletScanner.DetailType.Instruction) {
+            writeInstructions(writer, finding.instructions());
+        }
+        writer.write("}\n");
+    }
+
+    @Override
+    protected void writeImpact(ServletScanner.ScannedClass finding, int depth) throws IOException {
+        writer.write("{\"jar\":");
+        quote(writer, finding.jarName());
+        writer.write(",\"class\":");
+        quote(writer, finding.className());
+        writer.write(",\"namespace\":");
+        quote(writer, finding.namespace());
+        writer.write(",\"detail\":\"");
+        writer.write(finding.detail().name());
+        writer.write("\",\"depth\":");
+        writer.write(Integer.toString(depth));
+        writer.write("}\n");
+    }
+
+    /**
+     * 写出 ,"method","descriptor" 有指令时再写出 ,"instructions":[...] SARIF的properties里是同样的格式
+     */
+    static void writeInstructions(Writer writer, MethodInstructions instructions) throws IOException {
+        writer.write(",\"method\":");
+        quote(writer, instructions.name());
+        writer.write(",\"descriptor\":");
+        quote(writer, instructions.descriptor());
+        if (instructions.size() == 0) {
+            return;
+        }
+        writer.write(",\"instructions\":[");
+        for (int i = 0; i < instructions.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"offset\":");
+            writer.write(Integer.toString(instructions.offset(i)));
+            writer.write(",\"opcode\":\"");
+            writer.write(instructions.mnemonic(i));
+            writer.write('"');
+            if (instructions.line(i) != MethodInstructions.NO_LINE) {
+                writer.write(",\"line\":");
+                writer.write(Integer.toString(instructions.line(i)));
+            }
+            writer.write('}');
+        }
+        writer.write(']');
+    }
+
+    static void quote(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.dreamlike.scanner;
+
+import java.lang.classfile.Opcode;
+import java.util.Locale;
+
+/**
+ * Instruction级别下方法上的结果附带的信息：方法名、描述符 以及METHOD_BODY结果中每一条命中的指令
+ * 指令按在code数组中的顺序存放在三个基本类型数组里 每条指令10字节 不会为每条指令创建对象
+ * 参数、注解等不是方法体的结果没有指令 size为0
+ */
+public final class MethodInstructions {
+    /**
+     * 异常表中catch的类型命中时的opcode 偏移是handler的起始位置
+     */
+    public static final int CATCH = -1;
+    /**
+     * 没有LineNumberTable时的行号
+     */
+    public static final int NO_LINE = -1;
+
+    private static final int[] NO_INTS = new int[0];
+    private static final short[] NO_SHORTS = new short[0];
+    private static final String[] MNEMONICS = new String[256];
+
+    static {
+        for (Opcode opcode : Opcode.values()) {
+            // wide形式的bytecode是两个字节 不会出现在code数组的指令开头
+            if (opcode.bytecode() < MNEMONICS.length && MNEMONICS[opcode.bytecode()] == null) {
+                MNEMONICS[opcode.bytecode()] = opcode.name().toLowerCase(Locale.ROOT);
+            }
+        }
+    }
+
+    private final String name;
+    private final String descriptor;
+    private final int[] offsets;
+    private final short[] opcodes;
+    private final int[] lines;
+
+    MethodInstructions(String name, String descriptor) {
+        this(name, descriptor, NO_INTS, NO_SHORTS, NO_INTS);
+    }
+
+    MethodInstructions(String name, String descriptor, int[] offsets, short[] opcodes, int[] lines) {
+        this.name = name;
+        this.descriptor = descriptor;
+        this.offsets = offsets;
+        this.opcodes = opcodes;
+        this.lines = lines;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String descriptor() {
+        return descriptor;
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @return 指令在code数组中的偏移
+     */
+    public int offset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * @return 指令的opcode 或者CATCH
+     */
+    public int opcode(int i) {
+        return opcodes[i];
+    }
+
+    /**
+     * @return 小写的助记符 例如invokevirtual catch表示异常表
+     */
+    public String mnemonic(int i) {
+        return opcodes[i] == CATCH ? "catch" : MNEMONICS[opcodes[i]];
+    }
+
+    /**
+     * @return 源码行号 或者NO_LINE
+     */
+    public int line(int i) {
+        return lines[i];
+    }
+
+    @Override
+    public String toString() {
+        return name + descriptor + "[" + offsets.length + " instructions]";
+    }
+}
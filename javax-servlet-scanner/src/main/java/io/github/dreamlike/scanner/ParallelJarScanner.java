@@ -0,0 +1,555 @@
+package io.github.dreamlike.scanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.ClassModel;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.URI;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 把class条目（按批）和嵌套jar分发到ForkJoinPool上并行解析
+ * 结果的输出顺序是确定的：先是当前jar自身的class（central directory顺序） 再依次是每个嵌套jar（递归同样的规则）
+ * 每一段结果都要等前一段输出完才会交给sink 所以sink不会被并发调用
+ * 同一层同时在处理的嵌套jar最多threads个 避免所有DEFLATED的嵌套jar同时被解压到内存
+ * <p>
+ * 有ScanCache时 命中的jar直接重放缓存结果 不会被解压 没命中的jar里命中的class也不会再解析
+ * 有ClassObserver时（ImpactGraph、AgentCostEstimator） 每个class（不论是否命中）都要交给它 所以和缓存不会同时使用
+ * 有DigestIndex时 每个jar（包括嵌套jar）打开后先按central directory的摘要查索引 命中的按索引输出 不再解析 有缓存时索引的结果也记进缓存
+ * <p>
+ * 输入也可以是目录（解压的war、target/classes）或者一整个classpath 多个输入作为一个任务 按给定的顺序输出
+ * 目录由ForkJoin并行遍历 其中的class按路径排序后同样按批解析 之后再依次扫描目录里的jar
+ * 目录里的class没有crc 所以不走ScanCache 目录里的jar和普通的jar一样
+ * <p>
+ * .jmod是4字节的头后面跟一个zip class在classes/下 ZipArchive按偏移差处理前置数据 所以和jar走同一条路径
+ * 含有lib/modules的目录是JDK或者jlink生成的运行时镜像 通过目标镜像自己的jrt文件系统读取 每个模块当作一个目录 不需要解压到磁盘
+ */
+final class ParallelJarScanner implements AutoCloseable {
+    private static final int CLASS_BATCH = 64;
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+    private static final ValueLayout.OfInt CLASS_MAGIC_LAYOUT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final ForkJoinPool pool;
+    private final int window;
+    private final TargetMatcher matcher;
+    /**
+     * 不使用缓存时为null
+     */
+    private final ScanCache cache;
+    /**
+     * 不使用摘要索引时为null
+     */
+    private final DigestIndex index;
+    /**
+     * 不需要看到每个class时为null
+     */
+    private final ClassObserver observer;
+    /**
+     * 目录里的class是否通过内存映射读取
+     */
+    private final boolean mmap;
+    /**
+     * 是否记录方法体中每一条命中的指令 见MethodInstructions 和缓存不会同时使用
+     */
+    private final boolean instructions;
+    /**
+     * 目录和classpath里的jar由这里映射
+     * 映射的内存会被扫描线程访问 而Inflater不接受可关闭的shared arena派生出的ByteBuffer 所以用auto arena 扫描结束后由GC解除映射
+     */
+    private final Arena arena = Arena.ofAuto();
+
+    /**
+     * 是否由自己创建了pool withCache派生出的扫描器关闭时不关闭pool
+     */
+    private final boolean ownsPool;
+
+    ParallelJarScanner(int threads, TargetMatcher matcher, ScanCache cache, DigestIndex index, ClassObserver observer, boolean mmap, boolean instructions) {
+        this(new ForkJoinPool(threads), true, threads, matcher, cache, index, observer, mmap, instructions);
+    }
+
+    /**
+     * 使用调用方的线程池 关闭时不关闭它 同一个线程池可以同时给多个扫描器用
+     */
+    ParallelJarScanner(ForkJoinPool pool, TargetMatcher matcher, ScanCache cache, DigestIndex index, ClassObserver observer, boolean mmap, boolean instructions) {
+        this(pool, false, pool.getParallelism(), matcher, cache, index, observer, mmap, instructions);
+    }
+
+    private ParallelJarScanner(ForkJoinPool pool, boolean ownsPool, int window, TargetMatcher matcher, ScanCache cache, DigestIndex index, ClassObserver observer, boolean mmap, boolean instructions) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.window = window;
+        this.matcher = matcher;
+        this.cache = cache;
+        this.index = index;
+        this.observer = observer;
+        this.mmap = mmap;
+        this.instructions = instructions;
+    }
+
+    /**
+     * 共用同一个线程池 只换成另一个缓存 常驻模式下每个归档有自己的缓存 但整个进程只有一个线程池
+     * 派生出的扫描器可以和原来的并发使用 关闭它不会关闭线程池
+     */
+    ParallelJarScanner withCache(ScanCache cache) {
+        return new ParallelJarScanner(pool, false, window, matcher, cache, index, observer, mmap, instructions);
+    }
+
+    /**
+     * 把classpath字符串拆成输入 和java命令一样支持 dir/* 表示目录下所有的jar
+     */
+    static List<Path> classpath(String classpath) throws IOException {
+        ArrayList<Path> inputs = new ArrayList<>();
+        for (String element : classpath.split(File.pathSeparator)) {
+            if (element.isEmpty()) {
+                continue;
+            }
+            if (element.equals("*") || element.endsWith(File.separator + "*")) {
+                try (Stream<Path> jars = Files.list(Path.of(element.substring(0, element.length() - 1)))) {
+                    jars.filter(p -> p.getFileName().toString().endsWith(".jar")).sorted().forEach(inputs::add);
+                }
+                continue;
+            }
+            inputs.add(Path.of(element));
+        }
+        return inputs;
+    }
+
+    /**
+     * @param data 一个归档或者单个class（以0xCAFEBABE开头） 单个class直接在调用线程上解析
+     */
+    void scan(String jarName, MemorySegment data, FindingSink findingSink) throws IOException {
+        if (data.byteSize() >= 4 && data.get(CLASS_MAGIC_LAYOUT, 0) == CLASS_MAGIC) {
+            run(findingSink, sink -> {
+                Batch result = new Batch(jarName, sink);
+                scanClass(jarName, data.toArray(ValueLayout.JAVA_BYTE), result);
+                emit(result, sink);
+                return CompletableFuture.completedFuture(null);
+            });
+            return;
+        }
+        run(findingSink, sink -> archive(jarName, ZipArchive.open(data), CompletableFuture.completedFuture(null), sink));
+    }
+
+    /**
+     * 按顺序扫描每个输入（jar/war或者目录） 结果都输出到同一个sink
+     */
+    void scan(List<Path> inputs, FindingSink findingSink) throws IOException {
+        run(findingSink, sink -> {
+            CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+            for (Path input : inputs) {
+                if (isRuntimeImage(input)) {
+                    tail = runtimeImage(input, tail, sink);
+                } else if (Files.isDirectory(input)) {
+                    tail = directory(input.toString(), input, tail, sink);
+                } else if (Files.exists(input)) {
+                    tail = archive(input.toString(), ZipArchive.open(map(input)), tail, sink);
+                } else {
+                    throw new NoSuchFileException(input.toString());
+                }
+            }
+            return tail;
+        });
+    }
+
+    private void run(FindingSink findingSink, ScanJob job) throws IOException {
+        try {
+            job.start(new Output(findingSink)).join();
+        } catch (CompletionException e) {
+            switch (e.getCause()) {
+                case IOException cause -> throw cause;
+                case UncheckedIOException cause -> throw cause.getCause();
+                case null, default -> throw e;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 一个完整的jar 先按central directory的摘要查缓存
+     */
+    private CompletableFuture<Void> archive(String jarName, ZipArchive archive, CompletableFuture<Void> previous, Output sink) {
+        return archive(jarName, cache == null ? null : ScanCache.digest(archive.centralDirectory()), archive, previous, sink);
+    }
+
+    private CompletableFuture<Void> archive(String jarName, String digest, ZipArchive archive, CompletableFuture<Void> previous, Output sink) {
+        ScanCache.JarRecord cached = cache == null ? null : cache.jar(digest);
+        if (cached != null) {
+            return previous.thenRun(() -> cache.replay(digest, cached, jarName, sink));
+        }
+        return scanJar(jarName, digest, archive, previous, sink);
+    }
+
+    static boolean isRuntimeImage(Path input) {
+        return Files.isRegularFile(input.resolve("lib").resolve("modules"));
+    }
+
+    /**
+     * 按模块名排序 每个模块的jarName是 镜像路径!/模块名
+     * 所有模块的class都在同一个线程池里按批解析 所以模块之间也是并行的 输出仍然按模块的顺序
+     * jrt文件系统由目标镜像的jrt-fs.jar提供 镜像的版本可以和运行扫描器的JDK不同 扫描结束后关闭
+     */
+    private CompletableFuture<Void> runtimeImage(Path home, CompletableFuture<Void> previous, Output sink) throws IOException {
+        FileSystem jrt = FileSystems.newFileSystem(URI.create("jrt:/"), Map.of("java.home", home.toString()));
+        List<Path> modules;
+        try (Stream<Path> list = Files.list(jrt.getPath("/modules"))) {
+            modules = list.sorted().toList();
+        } catch (IOException | RuntimeException e) {
+            jrt.close();
+            throw e;
+        }
+        CompletableFuture<Void> tail = previous;
+        for (Path module : modules) {
+            tail = directory(home + "!/" + module.getFileName(), module, tail, sink);
+        }
+        return tail.whenComplete((_, _) -> {
+            try {
+                jrt.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private CompletableFuture<Void> directory(String name, Path root, CompletableFuture<Void> previous, Output sink) {
+        ArrayList<CompletableFuture<Batch>> batches = new ArrayList<>();
+        ArrayList<Path> jars = new ArrayList<>();
+        ArrayList<Path> batch = new ArrayList<>(CLASS_BATCH);
+        for (Path file : pool.invoke(new DirectoryWalk(root))) {
+            String fileName = file.getFileName().toString();
+            if (fileName.endsWith(".jar") || fileName.endsWith(".jmod")) {
+                jars.add(file);
+            } else if (fileName.endsWith(".class")) {
+                batch.add(file);
+                if (batch.size() == CLASS_BATCH) {
+                    batches.add(parseFiles(name, batch, sink));
+                    batch = new ArrayList<>(CLASS_BATCH);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(parseFiles(name, batch, sink));
+        }
+        CompletableFuture<Void> tail = previous.runAfterBoth(CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)), () -> {
+            for (CompletableFuture<Batch> result : batches) {
+                emit(result.join(), sink);
+            }
+        });
+        ArrayList<CompletableFuture<Void>> jarDone = new ArrayList<>(jars.size());
+        for (int i = 0; i < jars.size(); i++) {
+            Path jar = jars.get(i);
+            CompletableFuture<Void> slot = i < window ? CompletableFuture.completedFuture(null) : jarDone.get(i - window);
+            CompletableFuture<Void> before = tail;
+            tail = slot
+                    .thenApplyAsync(_ -> openFile(jar), pool)
+                    .thenCompose(archive -> archive(jar.toString(), archive, before, sink));
+            jarDone.add(tail);
+        }
+        return tail;
+    }
+
+    private CompletableFuture<Void> scanJar(String jarName, String digest, ZipArchive archive, CompletableFuture<Void> previous, Output sink) {
+        int known = index == null ? -1 : index.find(archive.centralDirectory());
+        if (known >= 0) {
+            if (cache != null) {
+                // 按索引的结果记一条只有一个虚拟class的记录 父jar重放时才能找到它
+                ScanCache.ClassKey key = ScanCache.archiveKey(digest);
+                cache.putFindings(key, index.findings(known));
+                cache.putJar(digest, new ScanCache.JarRecord(List.of(key), List.of()));
+            }
+            return previous.thenRun(() -> index.report(known, jarName, sink));
+        }
+        if (observer != null) {
+            observer.archive(jarName, archive.data());
+        }
+        ArrayList<CompletableFuture<Batch>> batches = new ArrayList<>();
+        ArrayList<ZipArchive.Entry> nestedJars = new ArrayList<>();
+        ArrayList<ZipArchive.Entry> batch = new ArrayList<>(CLASS_BATCH);
+        ArrayList<ScanCache.ClassKey> classKeys = cache == null ? null : new ArrayList<>();
+        for (ZipArchive.Entry entry : archive.entries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String entryName = entry.name();
+            if (entryName.endsWith(".jar")) {
+                nestedJars.add(entry);
+                continue;
+            }
+            if (entryName.endsWith(".class")) {
+                if (classKeys != null) {
+                    classKeys.add(ScanCache.classKey(entry));
+                }
+                batch.add(entry);
+                if (batch.size() == CLASS_BATCH) {
+                    batches.add(parseBatch(jarName, archive, batch, sink));
+                    batch = new ArrayList<>(CLASS_BATCH);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(parseBatch(jarName, archive, batch, sink));
+        }
+        // 嵌套jar的摘要要打开之后才知道 jar的记录等最后一个嵌套jar输出完再放进缓存
+        String[] nestedDigests = cache == null ? null : new String[nestedJars.size()];
+
+        CompletableFuture<Void> parsed = CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new));
+        CompletableFuture<Void> tail = previous.runAfterBoth(parsed, () -> {
+            for (CompletableFuture<Batch> result : batches) {
+                emit(result.join(), sink);
+            }
+        });
+        ArrayList<CompletableFuture<Void>> nestedDone = new ArrayList<>(nestedJars.size());
+        for (int i = 0; i < nestedJars.size(); i++) {
+            ZipArchive.Entry entry = nestedJars.get(i);
+            CompletableFuture<Void> slot = i < window ? CompletableFuture.completedFuture(null) : nestedDone.get(i - window);
+            CompletableFuture<Void> before = tail;
+            int nestedIndex = i;
+            // 和最外层的jar一样按自己的central directory查缓存 DEFLATED的嵌套jar因此总要解压一遍
+            CompletableFuture<Void> done = slot
+                    .thenApplyAsync(_ -> open(archive, entry), pool)
+                    .thenCompose(nested -> {
+                        String nestedDigest = cache == null ? null : ScanCache.digest(nested.centralDirectory());
+                        if (nestedDigests != null) {
+                            nestedDigests[nestedIndex] = nestedDigest;
+                        }
+                        return archive(entry.name(), nestedDigest, nested, before, sink);
+                    });
+            nestedDone.add(done);
+            tail = done;
+        }
+        if (cache != null) {
+            tail = tail.thenRun(() -> {
+                ArrayList<ScanCache.NestedJar> nested = new ArrayList<>(nestedJars.size());
+                for (int i = 0; i < nestedJars.size(); i++) {
+                    nested.add(new ScanCache.NestedJar(nestedJars.get(i).name(), nestedDigests[i]));
+                }
+                cache.putJar(digest, new ScanCache.JarRecord(classKeys, nested));
+            });
+        }
+        return tail;
+    }
+
+    private CompletableFuture<Batch> parseBatch(String jarName, ZipArchive archive, List<ZipArchive.Entry> entries, Output sink) {
+        return CompletableFuture.supplyAsync(() -> {
+            Batch result = new Batch(jarName, sink);
+            for (ZipArchive.Entry entry : entries) {
+                if (cache == null) {
+                    // 在工作线程里就推给结果列表 ClassModel不会被保留到输出阶段
+                    scanClass(jarName, bytes(archive, entry), result);
+                    continue;
+                }
+                ScanCache.ClassKey key = ScanCache.classKey(entry);
+                List<ScanCache.Finding> findings = cache.findings(key);
+                if (findings == null) {
+                    ArrayList<ScanCache.Finding> parsed = new ArrayList<>();
+                    ClassScanner.scan(bytes(archive, entry), matcher,
+                            (className, location, detail, namespace, _) -> parsed.add(new ScanCache.Finding(className, location, detail, namespace)));
+                    findings = parsed;
+                    cache.putFindings(key, findings);
+                }
+                for (ScanCache.Finding finding : findings) {
+                    result.report(finding.className(), finding.location(), finding.detail(), finding.namespace(), null);
+                }
+            }
+            return result;
+        }, pool);
+    }
+
+    private CompletableFuture<Batch> parseFiles(String name, List<Path> files, Output sink) {
+        return CompletableFuture.supplyAsync(() -> {
+            Batch result = new Batch(name, sink);
+            for (Path file : files) {
+                scanClass(name, read(file), result);
+            }
+            return result;
+        }, pool);
+    }
+
+    /**
+     * 有observer时先解析一次 observer和ClassScanner共用同一个ClassModel
+     */
+    private void scanClass(String jarName, byte[] classBytes, Batch result) {
+        ClassModel classModel = null;
+        if (observer != null) {
+            classModel = ClassFile.of().parse(classBytes);
+            observer.addClass(jarName, classBytes, classModel);
+        }
+        ClassScanner.scan(classBytes, classModel, matcher, instructions, result);
+    }
+
+    /**
+     * 在输出线程上按顺序调用
+     */
+    private void emit(Batch batch, Output sink) {
+        if (observer != null) {
+            observer.emitted(batch.jarName);
+        }
+        batch.emit(sink);
+    }
+
+    private MemorySegment map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+    }
+
+    private ZipArchive openFile(Path file) {
+        try {
+            return ZipArchive.open(map(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 映射只省掉了read的一次拷贝 class大多只有几KB 映射本身的开销可能更大 所以默认不开
+     */
+    private byte[] read(Path file) {
+        try {
+            // jrt里的文件不能映射
+            return mmap && file.getFileSystem() == FileSystems.getDefault() ? map(file).toArray(ValueLayout.JAVA_BYTE) : Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ZipArchive open(ZipArchive archive, ZipArchive.Entry entry) {
+        try {
+            return ZipArchive.open(archive.content(entry));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] bytes(ZipArchive archive, ZipArchive.Entry entry) {
+        try {
+            return archive.bytes(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 一次扫描的输出 只在输出阶段按顺序调用
+     * Summary级别时summary不为null 解析线程把结果直接计入SummaryFindingSink.Tally 不为每条结果创建ScannedClass
+     * 缓存重放和摘要索引的结果仍然逐条交给sink
+     */
+    private static final class Output implements Consumer<ServletScanner.ScannedClass> {
+        private final FindingSink sink;
+        private final SummaryFindingSink summary;
+
+        private Output(FindingSink sink) {
+            this.sink = sink;
+            this.summary = sink instanceof SummaryFindingSink summarySink ? summarySink : null;
+        }
+
+        @Override
+        public void accept(ServletScanner.ScannedClass finding) {
+            try {
+                sink.accept(finding);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 一批class的结果 在工作线程里收集 输出阶段再按顺序交给Output
+     */
+    private static final class Batch implements ClassScanner.Findings {
+        private final String jarName;
+        /**
+         * Summary级别只计数 否则为null
+         */
+        private final SummaryFindingSink.Tally tally;
+        private final ArrayList<ServletScanner.ScannedClass> findings;
+
+        private Batch(String jarName, Output output) {
+            this.jarName = jarName;
+            this.tally = output.summary == null ? null : new SummaryFindingSink.Tally();
+            this.findings = output.summary == null ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public void report(String className, ServletScanner.Location location, ServletScanner.Detail detail, String namespace, MethodInstructions instructions) {
+            if (tally != null) {
+                tally.report(className, location, detail, namespace, instructions);
+            } else {
+                findings.add(new ServletScanner.ScannedClass(jarName, className, location, detail, namespace, instructions));
+            }
+        }
+
+        void emit(Output output) {
+            if (tally != null) {
+                output.summary.add(jarName, tally);
+            } else {
+                findings.forEach(output);
+            }
+        }
+    }
+
+    private interface ScanJob {
+        CompletableFuture<Void> start(Output sink) throws IOException;
+    }
+
+    /**
+     * 并行遍历目录 每个子目录一个任务 结果按路径排序：先是当前目录的文件 再依次是每个子目录的
+     */
+    private static final class DirectoryWalk extends RecursiveTask<List<Path>> {
+        private final Path directory;
+
+        private DirectoryWalk(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            ArrayList<Path> files = new ArrayList<>();
+            ArrayList<DirectoryWalk> children = new ArrayList<>();
+            try (Stream<Path> entries = Files.list(directory)) {
+                for (Path entry : (Iterable<Path>) entries.sorted()::iterator) {
+                    if (Files.isDirectory(entry)) {
+                        DirectoryWalk child = new DirectoryWalk(entry);
+                        child.fork();
+                        children.add(child);
+                    } else {
+                        files.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (DirectoryWalk child : children) {
+                files.addAll(child.join());
+            }
+            return files;
+        }
+    }
+}
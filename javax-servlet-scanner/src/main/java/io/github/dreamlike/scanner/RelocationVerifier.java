@@ -0,0 +1,369 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.classfile.ClassFile;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static io.github.dreamlike.scanner.JsonLinesFindingSink.quote;
+
+/**
+ * 验证转换后的产物里没有残留的目标引用 也没有误改其他引用
+ * <p>
+ * 原始归档和转换后的产物（改写后的jar/war 或者agent的dump目录）在ForkJoinPool上并行建立索引
+ * 两边都是归档时class按 (嵌套jar路径, 资源名) 配对 资源名去掉 WEB-INF/classes/ BOOT-INF/classes/ 前缀 嵌套jar的顺序不影响配对
+ * dump目录只有类名 只能按资源名配对：原始产物中同名的class（同一个类打进了多个jar）无法区分agent改写的是哪一个 记为DUPLICATE
+ * 这时module-info和META-INF/下的多版本class不参与比较 agent不会dump它们
+ * 之后按批并行比较每一对：
+ * <ul>
+ *     <li>crc相同的是没有改动的class 不解析 只在原始字节上做前置匹配 还引用目标就是NOT_RELOCATED</li>
+ *     <li>dump目录里只有被agent改写过的类 原始产物里有而dump里没有的同样按没有改动处理</li>
+ *     <li>改动过的class在转换后的字节上跑一遍ClassScanner 每条结果都是RESIDUAL</li>
+ *     <li>再比较两边引用到的类：原始的引用按 javax.x -> jakarta.x 映射后应该和转换后的完全一致
+ *     多出来或者少了的非目标引用是CHANGED 例如被误改的javax.transaction.xa</li>
+ *     <li>改写后的归档里缺少或者多出来的class是MISSING/EXTRA</li>
+ * </ul>
+ * 输出按资源名排序 返回问题数 命令行据此设置退出码 可以直接作为部署前的检查
+ */
+final class RelocationVerifier implements AutoCloseable {
+    private static final int BATCH = 64;
+    private static final List<String> CLASS_ROOTS = List.of("WEB-INF/classes/", "BOOT-INF/classes/");
+
+    private final ForkJoinPool pool;
+    private final TargetMatcher matcher;
+    /**
+     * 每个命名空间的内部名前缀和它转换后的前缀 不是javax开头的命名空间没有映射 为null
+     */
+    private final String[] prefixes;
+    private final String[] relocatedPrefixes;
+    private final Arena arena = Arena.ofAuto();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger changed = new AtomicInteger();
+
+    RelocationVerifier(int threads, TargetMatcher matcher) {
+        this.pool = new ForkJoinPool(threads);
+        this.matcher = matcher;
+        List<String> namespaces = matcher.namespaces();
+        this.prefixes = new String[namespaces.size()];
+        this.relocatedPrefixes = new String[namespaces.size()];
+        for (int i = 0; i < namespaces.size(); i++) {
+            String prefix = namespaces.get(i).replace('.', '/');
+            prefixes[i] = prefix;
+            relocatedPrefixes[i] = prefix.startsWith("javax/") ? "jakarta/" + prefix.substring("javax/".length()) : null;
+        }
+    }
+
+    /**
+     * @param relocated 改写后的归档 或者agent的dump目录
+     * @return 问题数
+     */
+    int verify(Path original, Path relocated, Writer writer, boolean json) throws IOException {
+        boolean dump = Files.isDirectory(relocated);
+        CompletableFuture<Index> originalIndex = CompletableFuture.supplyAsync(() -> index(original, dump), pool);
+        CompletableFuture<Index> relocatedIndex = CompletableFuture.supplyAsync(() -> index(relocated, dump), pool);
+        Index beforeIndex = join(originalIndex);
+        Index afterIndex = join(relocatedIndex);
+        Map<String, Item> before = beforeIndex.items();
+        Map<String, Item> after = afterIndex.items();
+        TreeSet<String> keys = new TreeSet<>(before.keySet());
+        keys.addAll(after.keySet());
+
+        ArrayList<CompletableFuture<List<Problem>>> batches = new ArrayList<>();
+        ArrayList<String> batch = new ArrayList<>(BATCH);
+        for (String key : keys) {
+            batch.add(key);
+            if (batch.size() == BATCH) {
+                batches.add(verifyBatch(batch, before, after, dump));
+                batch = new ArrayList<>(BATCH);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(verifyBatch(batch, before, after, dump));
+        }
+
+        if (!json) {
+            writer.write("=== Verify: " + original + " -> " + relocated + " ===\nKind | Class | Location | Namespace | Detail\n");
+        }
+        int problems = 0;
+        ArrayList<Problem> duplicates = new ArrayList<>(beforeIndex.duplicates());
+        duplicates.addAll(afterIndex.duplicates());
+        duplicates.sort(Comparator.comparing(Problem::key).thenComparing(Problem::location));
+        for (Problem problem : duplicates) {
+            problems++;
+            write(writer, json, problem);
+        }
+        for (CompletableFuture<List<Problem>> result : batches) {
+            for (Problem problem : join(result)) {
+                problems++;
+                write(writer, json, problem);
+            }
+        }
+        if (json) {
+            writer.write("{\"summary\":true,\"classes\":" + keys.size() + ",\"unchanged\":" + unchanged.get()
+                    + ",\"changed\":" + changed.get() + ",\"problems\":" + problems + "}\n");
+        } else {
+            writer.write("--------------------------------------------------------------\n" + keys.size() + " classes, "
+                    + unchanged.get() + " unchanged, " + changed.get() + " changed, " + problems + " problems\n");
+        }
+        writer.flush();
+        return problems;
+    }
+
+    private CompletableFuture<List<Problem>> verifyBatch(List<String> keys, Map<String, Item> before, Map<String, Item> after, boolean dump) {
+        return CompletableFuture.supplyAsync(() -> {
+            ArrayList<Problem> problems = new ArrayList<>();
+            for (String key : keys) {
+                try {
+                    verify(key, before.get(key), after.get(key), dump, problems);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return problems;
+        }, pool);
+    }
+
+    private void verify(String key, Item before, Item after, boolean dump, List<Problem> problems) throws IOException {
+        if (before == null) {
+            problems.add(new Problem(Kind.EXTRA, key, after.location(), "", "only in relocated"));
+            return;
+        }
+        if (after == null) {
+            if (!dump) {
+                problems.add(new Problem(Kind.MISSING, key, before.location(), "", "missing in relocated"));
+                return;
+            }
+            // agent没有改写它 运行时加载的就是原始的class
+            unchanged.incrementAndGet();
+            notRelocated(key, before, before.bytes(), problems);
+            return;
+        }
+        byte[] afterBytes = after.bytes();
+        if (before.crc() == after.crc(afterBytes)) {
+            unchanged.incrementAndGet();
+            notRelocated(key, after, afterBytes, problems);
+            return;
+        }
+        changed.incrementAndGet();
+        ClassScanner.scan(afterBytes, matcher, (className, location, detail, namespace, _) ->
+                problems.add(new Problem(Kind.RESIDUAL, key, after.location(), namespace, location.name() + " " + detail.name())));
+
+        // 原始引用映射之后 -> 原始引用
+        HashMap<String, String> expected = new HashMap<>();
+        for (String reference : ImpactGraph.references(ClassFile.of().parse(before.bytes()))) {
+            expected.put(relocate(reference), reference);
+        }
+        HashSet<String> actual = ImpactGraph.references(ClassFile.of().parse(afterBytes));
+        TreeSet<String> removed = new TreeSet<>();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            // 没映射过去而是原样保留的目标引用已经是RESIDUAL了
+            if (!actual.contains(entry.getKey()) && !actual.contains(entry.getValue())) {
+                removed.add(entry.getKey());
+            }
+        }
+        TreeSet<String> added = new TreeSet<>();
+        for (String reference : actual) {
+            if (!expected.containsKey(reference) && matcher.match(reference) == 0) {
+                added.add(reference);
+            }
+        }
+        for (String reference : removed) {
+            problems.add(new Problem(Kind.CHANGED, key, after.location(), "", "-" + reference));
+        }
+        for (String reference : added) {
+            problems.add(new Problem(Kind.CHANGED, key, after.location(), "", "+" + reference));
+        }
+    }
+
+    private void notRelocated(String key, Item item, byte[] classBytes, List<Problem> problems) {
+        long mask = matcher.match(classBytes);
+        while (mask != 0) {
+            problems.add(new Problem(Kind.NOT_RELOCATED, key, item.location(), matcher.namespace(Long.numberOfTrailingZeros(mask)), "unchanged class still references target"));
+            mask &= mask - 1;
+        }
+    }
+
+    /**
+     * @return 按agent的规则映射后的内部名 不是目标时原样返回
+     */
+    private String relocate(String internalName) {
+        for (int i = 0; i < prefixes.length; i++) {
+            if (relocatedPrefixes[i] != null && internalName.startsWith(prefixes[i])
+                    && (internalName.length() == prefixes[i].length() || internalName.charAt(prefixes[i].length()) == '/')) {
+                return relocatedPrefixes[i] + internalName.substring(prefixes[i].length());
+            }
+        }
+        return internalName;
+    }
+
+    /**
+     * @param byName 和dump目录比较 只按资源名配对
+     */
+    private Index index(Path input, boolean byName) {
+        Index index = new Index(new HashMap<>(), new ArrayList<>());
+        try {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> files = Files.walk(input)) {
+                    for (Path file : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".class")).sorted()::iterator) {
+                        String name = input.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                        index.put(key(name), new Item(file.toString(), null, null, file));
+                    }
+                }
+            } else {
+                index(input.toString(), "", ZipArchive.open(map(input)), byName, index);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return index;
+    }
+
+    /**
+     * @param nested 嵌套jar在最外层归档中的路径 以!/结尾 最外层是空串
+     */
+    private static void index(String location, String nested, ZipArchive archive, boolean byName, Index index) throws IOException {
+        for (ZipArchive.Entry entry : archive.entries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.name();
+            if (name.endsWith(".class")) {
+                if (byName && (name.startsWith("META-INF/") || name.equals("module-info.class"))) {
+                    continue;
+                }
+                index.put(byName ? key(name) : nested + key(name), new Item(location + "!/" + name, archive, entry, null));
+            } else if (name.endsWith(".jar")) {
+                index(location + "!/" + name, nested + name + "!/", ZipArchive.open(archive.content(entry)), byName, index);
+            }
+        }
+    }
+
+    private static String key(String name) {
+        for (String root : CLASS_ROOTS) {
+            if (name.startsWith(root)) {
+                return name.substring(root.length());
+            }
+        }
+        return name;
+    }
+
+    private MemorySegment map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+    }
+
+    private static void write(Writer writer, boolean json, Problem problem) throws IOException {
+        if (json) {
+            writer.write("{\"kind\":\"" + problem.kind().name() + "\",\"class\":");
+            quote(writer, problem.key());
+            writer.write(",\"location\":");
+            quote(writer, problem.location());
+            writer.write(",\"namespace\":");
+            quote(writer, problem.namespace());
+            writer.write(",\"detail\":");
+            quote(writer, problem.detail());
+            writer.write("}\n");
+            return;
+        }
+        writer.write(problem.kind().name() + " | " + problem.key() + " | " + problem.location() + " | " + problem.namespace() + " | " + problem.detail() + "\n");
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) {
+                throw cause.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    enum Kind {
+        /**
+         * 改写后的class里还有目标引用
+         */
+        RESIDUAL,
+        /**
+         * 没有被改写的class引用了目标
+         */
+        NOT_RELOCATED,
+        /**
+         * 非目标的引用被改了
+         */
+        CHANGED,
+        MISSING,
+        EXTRA,
+        /**
+         * 同一侧有多个相同key的class 只比较第一个
+         */
+        DUPLICATE
+    }
+
+    record Problem(Kind kind, String key, String location, String namespace, String detail) {
+    }
+
+    /**
+     * @param duplicates 相同key的第二个及之后的class
+     */
+    private record Index(Map<String, Item> items, List<Problem> duplicates) {
+
+        void put(String key, Item item) {
+            Item first = items.putIfAbsent(key, item);
+            if (first != null) {
+                duplicates.add(new Problem(Kind.DUPLICATE, key, item.location(), "", "duplicate of " + first.location()));
+            }
+        }
+    }
+
+    /**
+     * 归档中的条目（archive和entry不为null）或者目录中的文件（file不为null）
+     */
+    private record Item(String location, ZipArchive archive, ZipArchive.Entry entry, Path file) {
+
+        byte[] bytes() throws IOException {
+            return archive != null ? archive.bytes(entry) : Files.readAllBytes(file);
+        }
+
+        /**
+         * 归档中的条目直接用central directory中的crc 文件需要自己算
+         */
+        long crc() throws IOException {
+            return archive != null ? entry.crc() : crc(bytes());
+        }
+
+        long crc(byte[] bytes) {
+            if (archive != null) {
+                return entry.crc();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return crc.getValue();
+        }
+    }
+}
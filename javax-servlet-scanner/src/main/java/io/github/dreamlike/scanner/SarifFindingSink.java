@@ -0,0 +1,122 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+import static io.github.dreamlike.scanner.JsonLinesFindingSink.quote;
+import static io.github.dreamlike.scanner.JsonLinesFindingSink.writeInstructions;
+
+/**
+ * SARIF 2.1.0 每个Detail是一条rule 每条结果是一个result
+ * 头部在构造时写出 result边扫边写 close时补上结尾 所以同样不需要保留结果
+ * artifactLocation是URI 不是原样的路径
+ * 带MethodInstructions的结果多一个function类型的logicalLocation 方法名、描述符和指令放在properties里（格式同jsonl）
+ */
+final class SarifFindingSink extends AbstractFindingSink {
+    private boolean firstResult = true;
+
+    SarifFindingSink(Writer writer) throws IOException {
+        super(writer, ServletScanner.DetailType.ALL);
+        writer.write("{\"version\":\"2.1.0\",\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"runs\":[{\"tool\":{\"driver\":{\"name\":\"javax-servlet-scanner\",\"rules\":[");
+        ServletScanner.Detail[] details = ServletScanner.Detail.values();
+        for (int i = 0; i < details.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"id\":\"");
+            writer.write(details[i].name());
+            writer.write("\",\"shortDescription\":{\"text\":");
+            quote(writer, details[i].describe("target namespace"));
+            writer.write("}}");
+        }
+        writer.write("]}},\"results\":[\n");
+    }
+
+    @Override
+    protected void write(ServletScanner.ScannedClass finding) throws IOException {
+        result(finding, "warning", -1);
+    }
+
+    /**
+     * 间接受影响的类级别是note 深度放在properties里
+     */
+    @Override
+    protected void writeImpact(ServletScanner.ScannedClass finding, int depth) throws IOException {
+        result(finding, "note", depth);
+    }
+
+    private void result(ServletScanner.ScannedClass finding, String level, int depth) throws IOException {
+        if (!firstResult) {
+            writer.write(",\n");
+        }
+        firstResult = false;
+        writer.write("{\"ruleId\":\"");
+        writer.write(finding.detail().name());
+        writer.write("\",\"level\":\"");
+        writer.write(level);
+        writer.write("\",\"message\":{\"text\":");
+        quote(writer, finding.detail().describe(finding.namespace()));
+        writer.write("},\"locations\":[{\"physicalLocation\":{\"artifactLocation\":");
+        artifactLocation(finding.jarName());
+        writer.write("},\"logicalLocations\":[{\"fullyQualifiedName\":");
+        quote(writer, finding.className());
+        writer.write(",\"kind\":\"type\"}");
+        MethodInstructions instructions = finding.instructions();
+        if (instructions != null) {
+            writer.write(",{\"fullyQualifiedName\":");
+            quote(writer, finding.className() + "." + instructions.name() + instructions.descriptor());
+            writer.write(",\"kind\":\"function\"}");
+        }
+        writer.write("]}],\"properties\":{\"namespace\":");
+        quote(writer, finding.namespace());
+        writer.write(",\"location\":\"");
+        writer.write(finding.location().name());
+        writer.write('"');
+        if (instructions != null) {
+            writeInstructions(writer, instructions);
+        }
+        if (depth >= 0) {
+            writer.write(",\"depth\":");
+            writer.write(Integer.toString(depth));
+        }
+        writer.write("}}");
+    }
+
+    /**
+     * 绝对路径写成file URI 嵌套jar的条目名、相对的输入路径写成相对于%SRCROOT%的URI引用 两种都按URI规则转义
+     */
+    private void artifactLocation(String jarName) throws IOException {
+        Path path = null;
+        try {
+            path = Path.of(jarName);
+        } catch (InvalidPathException ignored) {
+            // 不是本地路径的名字 按相对引用处理
+        }
+        if (path != null && path.isAbsolute()) {
+            writer.write("{\"uri\":");
+            quote(writer, path.toUri().toString());
+            writer.write('}');
+            return;
+        }
+        String uri;
+        try {
+            uri = new URI(null, null, jarName.replace('\\', '/'), null).toASCIIString();
+        } catch (URISyntaxException e) {
+            uri = URLEncoder.encode(jarName, StandardCharsets.UTF_8).replace("+", "%20");
+        }
+        writer.write("{\"uri\":");
+        quote(writer, uri);
+        writer.write(",\"uriBaseId\":\"%SRCROOT%\"}");
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        writer.write("\n]}]}\n");
+    }
+}
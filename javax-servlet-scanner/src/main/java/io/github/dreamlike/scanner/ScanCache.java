@@ -0,0 +1,273 @@
+package io.github.dreamlike.scanner;
+
+import java.io.*;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 持久化的增量扫描缓存
+ * <p>
+ * class以 条目名+central directory中的crc32+大小 为key 存的是它的扫描结果（没有命中的class也会存一个空列表）
+ * jar以摘要为key 存的是它的class列表和嵌套jar列表 命中时整个jar（包括嵌套jar）都不需要再解压
+ * 每一级jar的摘要都是它自己central directory的SHA-256 嵌套jar不用父jar中记录的crc和大小 避免CRC32碰撞时重放旧结果
+ * 所以没有变化的war重新扫描时只需要读一遍最外层的central directory 变化了的war中没有变化的嵌套jar要打开读它的central directory
+ * <p>
+ * 文件头记录了RULE_VERSION和目标集合 任何一个对不上都当作空缓存
+ * 保存时只写出本次扫描用到的条目 旧条目自然淘汰
+ */
+final class ScanCache {
+    /**
+     * 检测规则有变化时需要加一 让旧缓存和DigestIndex失效
+     * 3：invokedynamic/condy调用点的描述符也参与检测（见ConstantPoolFilter）
+     */
+    static final int RULE_VERSION = 3;
+    private static final int MAGIC = 0x4A585343;
+
+    private final Path path;
+    private final String targets;
+    private final Map<ClassKey, List<Finding>> previousClasses;
+    private final Map<String, JarRecord> previousJars;
+    private final ConcurrentHashMap<ClassKey, List<Finding>> classes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, JarRecord> jars = new ConcurrentHashMap<>();
+
+    private ScanCache(Path path, String targets, Map<ClassKey, List<Finding>> previousClasses, Map<String, JarRecord> previousJars) {
+        this.path = path;
+        this.targets = targets;
+        this.previousClasses = previousClasses;
+        this.previousJars = previousJars;
+    }
+
+    static ScanCache load(Path path, List<String> targets) {
+        String targetSet = targetSet(targets);
+        HashMap<ClassKey, List<Finding>> classes = new HashMap<>();
+        HashMap<String, JarRecord> jars = new HashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC || input.readInt() != RULE_VERSION || !input.readUTF().equals(targetSet)) {
+                return new ScanCache(path, targetSet, Map.of(), Map.of());
+            }
+            int classCount = input.readInt();
+            for (int i = 0; i < classCount; i++) {
+                ClassKey key = readClassKey(input);
+                int findingCount = input.readInt();
+                ArrayList<Finding> findings = new ArrayList<>(findingCount);
+                for (int j = 0; j < findingCount; j++) {
+                    findings.add(new Finding(input.readUTF(), ServletScanner.Location.values()[input.readByte()],
+                            ServletScanner.Detail.values()[input.readByte()], input.readUTF()));
+                }
+                classes.put(key, findings);
+            }
+            int jarCount = input.readInt();
+            for (int i = 0; i < jarCount; i++) {
+                String digest = input.readUTF();
+                int jarClassCount = input.readInt();
+                ArrayList<ClassKey> jarClasses = new ArrayList<>(jarClassCount);
+                for (int j = 0; j < jarClassCount; j++) {
+                    jarClasses.add(readClassKey(input));
+                }
+                int nestedCount = input.readInt();
+                ArrayList<NestedJar> nestedJars = new ArrayList<>(nestedCount);
+                for (int j = 0; j < nestedCount; j++) {
+                    nestedJars.add(new NestedJar(input.readUTF(), input.readUTF()));
+                }
+                jars.put(digest, new JarRecord(jarClasses, nestedJars));
+            }
+        } catch (NoSuchFileException e) {
+            return new ScanCache(path, targetSet, Map.of(), Map.of());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("ignore broken scan cache " + path + ": " + e);
+            return new ScanCache(path, targetSet, Map.of(), Map.of());
+        }
+        return new ScanCache(path, targetSet, classes, jars);
+    }
+
+    /**
+     * 只在内存中使用的缓存 save不会写文件 用于常驻模式下在同一个jar的多次扫描之间复用结果
+     */
+    static ScanCache inMemory(List<String> targets) {
+        return new ScanCache(null, targetSet(targets), Map.of(), Map.of());
+    }
+
+    /**
+     * 文件头里记录的目标集合 和顺序无关
+     */
+    static String targetSet(List<String> targets) {
+        return String.join(",", targets.stream().sorted().toList());
+    }
+
+    String targets() {
+        return targets;
+    }
+
+    /**
+     * 相当于save之后再load：这次扫描用到的条目成为下一次扫描的旧条目 没用到的淘汰
+     */
+    ScanCache next() {
+        return new ScanCache(path, targets, classes, jars);
+    }
+
+    static String digest(MemorySegment centralDirectory) {
+        return HexFormat.of().formatHex(sha256(centralDirectory));
+    }
+
+    static byte[] sha256(MemorySegment centralDirectory) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(centralDirectory.asByteBuffer());
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static ClassKey classKey(ZipArchive.Entry entry) {
+        return new ClassKey(entry.name(), entry.crc(), entry.size());
+    }
+
+    /**
+     * 按DigestIndex输出的jar没有解析过的class 用jar的摘要构造一个代表整个归档的key 不会和真实的条目名冲突
+     */
+    static ClassKey archiveKey(String digest) {
+        return new ClassKey(DigestIndex.ARCHIVE + digest, 0, 0);
+    }
+
+    /**
+     * @return 找不到时返回null
+     */
+    List<Finding> findings(ClassKey key) {
+        List<Finding> findings = classes.get(key);
+        if (findings == null) {
+            findings = previousClasses.get(key);
+            if (findings != null) {
+                classes.put(key, findings);
+            }
+        }
+        return findings;
+    }
+
+    void putFindings(ClassKey key, List<Finding> findings) {
+        classes.put(key, findings);
+    }
+
+    void putJar(String digest, JarRecord record) {
+        jars.put(digest, record);
+    }
+
+    /**
+     * 只有这个jar以及它所有的嵌套jar和class都在缓存里时才算命中
+     */
+    JarRecord jar(String digest) {
+        JarRecord record = jars.get(digest);
+        if (record == null) {
+            record = previousJars.get(digest);
+        }
+        // 记录在jar的结果全部输出之后才放进来 但它引用的条目可能来自其他还没有完成的scan 或者在上次保存时已经被淘汰
+        return record != null && isComplete(record) ? record : null;
+    }
+
+    /**
+     * 按扫描时的顺序把缓存里的结果重新输出一遍 同时把用到的条目带到这次要保存的缓存里
+     */
+    void replay(String digest, JarRecord record, String jarName, Consumer<ServletScanner.ScannedClass> sink) {
+        jars.put(digest, record);
+        for (ClassKey key : record.classes()) {
+            for (Finding finding : findings(key)) {
+                sink.accept(new ServletScanner.ScannedClass(jarName, finding.className(), finding.location(), finding.detail(), finding.namespace()));
+            }
+        }
+        for (NestedJar nestedJar : record.nestedJars()) {
+            replay(nestedJar.digest(), jar(nestedJar.digest()), nestedJar.name(), sink);
+        }
+    }
+
+    void save() {
+        if (path == null) {
+            return;
+        }
+        try {
+            if (path.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(path.toAbsolutePath().getParent());
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(RULE_VERSION);
+                output.writeUTF(targets);
+                output.writeInt(classes.size());
+                for (Map.Entry<ClassKey, List<Finding>> entry : classes.entrySet()) {
+                    writeClassKey(output, entry.getKey());
+                    output.writeInt(entry.getValue().size());
+                    for (Finding finding : entry.getValue()) {
+                        output.writeUTF(finding.className());
+                        output.writeByte(finding.location().ordinal());
+                        output.writeByte(finding.detail().ordinal());
+                        output.writeUTF(finding.namespace());
+                    }
+                }
+                output.writeInt(jars.size());
+                for (Map.Entry<String, JarRecord> entry : jars.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeInt(entry.getValue().classes().size());
+                    for (ClassKey key : entry.getValue().classes()) {
+                        writeClassKey(output, key);
+                    }
+                    output.writeInt(entry.getValue().nestedJars().size());
+                    for (NestedJar nestedJar : entry.getValue().nestedJars()) {
+                        output.writeUTF(nestedJar.name());
+                        output.writeUTF(nestedJar.digest());
+                    }
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean isComplete(JarRecord record) {
+        for (ClassKey key : record.classes()) {
+            if (!classes.containsKey(key) && !previousClasses.containsKey(key)) {
+                return false;
+            }
+        }
+        for (NestedJar nestedJar : record.nestedJars()) {
+            if (jar(nestedJar.digest()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ClassKey readClassKey(DataInputStream input) throws IOException {
+        return new ClassKey(input.readUTF(), input.readLong(), input.readLong());
+    }
+
+    private static void writeClassKey(DataOutputStream output, ClassKey key) throws IOException {
+        output.writeUTF(key.name());
+        output.writeLong(key.crc());
+        output.writeLong(key.size());
+    }
+
+    record ClassKey(String name, long crc, long size) {
+    }
+
+    record Finding(String className, ServletScanner.Location location, ServletScanner.Detail detail, String namespace) {
+    }
+
+    record NestedJar(String name, String digest) {
+    }
+
+    record JarRecord(List<ClassKey> classes, List<NestedJar> nestedJars) {
+    }
+}
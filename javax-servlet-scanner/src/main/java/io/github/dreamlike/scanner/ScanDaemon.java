@@ -0,0 +1,318 @@
+package io.github.dreamlike.scanner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 常驻模式
+ * <p>
+ * 启动时扫描监听目录下所有的归档 结果保存在内存的索引里 之后由WatchService监听目录变化
+ * 一批变化（两次事件间隔超过DEBOUNCE_MILLIS才算一批结束）只重新扫描修改时间或大小变了的归档
+ * 每个归档有自己的内存ScanCache 重新扫描时central directory没变就直接重放 变了也只解析变了的class
+ * <p>
+ * 查询走本机回环地址上的TCP 一个连接一条命令 服务端写完结果后关闭连接 所以 nc 就可以当客户端：
+ * LIST                                         每行一个归档和它的结果数
+ * FINDINGS [Jar|Class|ALL] [text|jsonl|sarif] [path]  输出全部（或者某个）归档的结果 默认ALL text
+ * RESCAN [path]                                强制重新扫描全部（或者某个）归档
+ * STOP                                         退出
+ * 整个进程只有一个ParallelJarScanner（一个ForkJoinPool） 每个归档用withCache换成自己的缓存
+ * 一批变化的归档由threads个驱动线程同时扫描 同一个归档的扫描按路径加锁 不会互相覆盖
+ * 每个连接在自己的虚拟线程上处理 RESCAN等待扫描时不影响其他查询 查询读的是不可变的结果列表 不会和扫描互相等待
+ */
+final class ScanDaemon implements AutoCloseable {
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final CommandLineOptions options;
+    private final TargetMatcher matcher;
+    private final WatchService watchService;
+    private final ServerSocket serverSocket;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final ConcurrentHashMap<Path, Artifact> index = new ConcurrentHashMap<>();
+    /**
+     * 每个归档一个锁 同一个归档同时只有一次扫描
+     */
+    private final ConcurrentHashMap<Path, Object> scanning = new ConcurrentHashMap<>();
+    private final ParallelJarScanner scanner;
+    private final ExecutorService drivers;
+    private final Arena arena = Arena.ofAuto();
+
+    ScanDaemon(CommandLineOptions options, TargetMatcher matcher) throws IOException {
+        this.options = options;
+        this.matcher = matcher;
+        this.scanner = new ParallelJarScanner(options.scan().threads(), matcher, null, null, null, false, false);
+        this.drivers = Executors.newFixedThreadPool(options.scan().threads());
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port()));
+    }
+
+    void run() throws IOException {
+        for (Path directory : options.watch()) {
+            register(directory.toAbsolutePath().normalize());
+        }
+        System.err.println("indexed " + index.size() + " archives, listening on " + serverSocket.getLocalSocketAddress());
+        Thread.ofPlatform().daemon().name("scanner-daemon-query").start(this::serve);
+        try {
+            watch();
+        } catch (ClosedWatchServiceException | InterruptedException _) {
+            // STOP
+        }
+    }
+
+    private void watch() throws InterruptedException {
+        while (true) {
+            WatchKey key = watchService.take();
+            TreeSet<Path> changed = new TreeSet<>();
+            while (key != null) {
+                collect(key, changed);
+                key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            ArrayList<Path> archives = new ArrayList<>();
+            for (Path path : changed) {
+                if (Files.isDirectory(path)) {
+                    register(path);
+                } else if (Files.exists(path)) {
+                    archives.add(path);
+                } else if (index.keySet().removeIf(p -> p.startsWith(path))) {
+                    // 删掉的也可能是整个目录
+                    scanning.keySet().removeIf(p -> p.startsWith(path));
+                    System.err.println("removed " + path);
+                }
+            }
+            scan(archives, false);
+        }
+    }
+
+    private void collect(WatchKey key, TreeSet<Path> changed) {
+        Path directory;
+        synchronized (this) {
+            directory = watchedDirectories.get(key);
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // 事件丢了 只能把已知的归档全部检查一遍
+                changed.addAll(index.keySet());
+                continue;
+            }
+            if (directory != null) {
+                Path path = directory.resolve((Path) event.context());
+                if (isArchive(path) || Files.isDirectory(path)) {
+                    changed.add(path);
+                }
+            }
+        }
+        if (!key.reset()) {
+            synchronized (this) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 注册目录和它的所有子目录 并扫描里面的归档
+     */
+    private void register(Path root) {
+        ArrayList<Path> archives = new ArrayList<>();
+        synchronized (this) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    if (Files.isDirectory(path)) {
+                        watchedDirectories.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), path);
+                    } else if (isArchive(path)) {
+                        archives.add(path);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("can not watch " + root + ": " + e);
+            }
+        }
+        scan(archives, false);
+    }
+
+    /**
+     * 在驱动线程上同时扫描 全部结束后才返回
+     */
+    private void scan(List<Path> paths, boolean force) {
+        ArrayList<Future<?>> scans = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            scans.add(drivers.submit(() -> scan(path, force)));
+        }
+        for (Future<?> scan : scans) {
+            try {
+                scan.get();
+            } catch (ExecutionException e) {
+                // scan自己会打印错误 这里只有意料之外的
+                System.err.println("scan failed: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param force 为false时修改时间和大小都没变的归档不会重新扫描
+     */
+    private void scan(Path path, boolean force) {
+        synchronized (scanning.computeIfAbsent(path, _ -> new Object())) {
+            scanLocked(path, force);
+        }
+    }
+
+    private void scanLocked(Path path, boolean force) {
+        Artifact previous = index.get(path);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (!force && previous != null && previous.lastModified() == lastModified && previous.size() == attributes.size()) {
+                return;
+            }
+            ScanCache cache = previous == null ? ScanCache.inMemory(matcher.namespaces()) : previous.cache().next();
+            ArrayList<ServletScanner.ScannedClass> findings = new ArrayList<>();
+            long start = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MemorySegment archive = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+                scanner.withCache(cache).scan(path.toString(), archive, FindingSink.of(findings::add));
+            }
+            index.put(path, new Artifact(lastModified, attributes.size(), List.copyOf(findings), cache));
+            System.err.println("scanned " + path + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms, " + findings.size() + " findings");
+        } catch (IOException | RuntimeException | InternalError e) {
+            // 多半是文件还没写完（映射的文件被截断时访问会抛InternalError） 保留旧结果 写完时还会有事件
+            System.err.println("can not scan " + path + ": " + e);
+        }
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("scanner-daemon-query-" + socket.getPort()).start(() -> query(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("query failed: " + e);
+                }
+            }
+        }
+    }
+
+    private void query(Socket connection) {
+        try (Socket socket = connection;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null) {
+                return;
+            }
+            boolean running;
+            try {
+                running = handle(line.trim().split("\\s+"), writer);
+            } catch (IllegalArgumentException e) {
+                writer.write("ERROR " + e.getMessage() + "\n");
+                running = true;
+            }
+            if (!running) {
+                writer.flush();
+                close();
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                System.err.println("query failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * @return 为false时表示要退出
+     */
+    private boolean handle(String[] command, Writer writer) throws IOException {
+        switch (command[0].toUpperCase()) {
+            case "LIST" -> {
+                for (Map.Entry<Path, Artifact> entry : new TreeMap<>(index).entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue().findings().size() + "\n");
+                }
+            }
+            case "FINDINGS" -> {
+                ServletScanner.DetailType detailType = command.length > 1 ? ServletScanner.DetailType.valueOf(command[1]) : ServletScanner.DetailType.ALL;
+                FindingSink.Format format = command.length > 2 ? FindingSink.Format.valueOf(command[2]) : FindingSink.Format.text;
+                Iterable<Path> paths = command.length > 3 ? List.of(Path.of(command[3]).toAbsolutePath().normalize()) : new TreeSet<>(index.keySet());
+                try (FindingSink sink = FindingSink.create(format, detailType, writer, matcher.namespaces())) {
+                    for (Path path : paths) {
+                        Artifact artifact = index.get(path);
+                        if (artifact == null) {
+                            continue;
+                        }
+                        for (ServletScanner.ScannedClass finding : artifact.findings()) {
+                            sink.accept(finding);
+                        }
+                    }
+                }
+            }
+            case "RESCAN" -> {
+                List<Path> paths = command.length > 1 ? List.of(Path.of(command[1]).toAbsolutePath().normalize()) : List.copyOf(index.keySet());
+                scan(paths, true);
+                writer.write("OK " + paths.size() + "\n");
+            }
+            case "STOP" -> {
+                writer.write("OK\n");
+                return false;
+            }
+            default -> writer.write("ERROR unknown command " + command[0] + "\n");
+        }
+        return true;
+    }
+
+    private static boolean isArchive(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".ear");
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        watchService.close();
+        drivers.shutdownNow();
+        scanner.close();
+    }
+
+    /**
+     * @param cache 这个归档上一次扫描的缓存 下次扫描时由它派生新的缓存
+     */
+    private record Artifact(long lastModified, long size, List<ServletScanner.ScannedClass> findings, ScanCache cache) {
+    }
+}
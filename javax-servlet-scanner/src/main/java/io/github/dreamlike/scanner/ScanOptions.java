@@ -0,0 +1,187 @@
+package io.github.dreamlike.scanner;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 嵌入使用（见Scanner）时的扫描参数 不可变 可以在多次scan之间共用
+ * <pre>
+ * ScanOptions options = ScanOptions.builder()
+ *         .targets(List.of("javax.servlet", "javax.validation"))
+ *         .threads(4)
+ *         .build();
+ * </pre>
+ * 输出格式、常驻模式这类只有命令行才用的参数在CommandLineOptions中
+ */
+public final class ScanOptions {
+    private final int threads;
+    private final List<String> targets;
+    private final Path cache;
+    private final Path index;
+    private final boolean impact;
+    private final boolean mmap;
+    private final boolean instructions;
+    private final Path writeIndex;
+
+    private ScanOptions(Builder builder) {
+        this.threads = builder.threads;
+        this.targets = builder.targets;
+        this.cache = builder.cache;
+        this.index = builder.index;
+        this.impact = builder.impact;
+        this.mmap = builder.mmap;
+        this.instructions = builder.instructions;
+        this.writeIndex = builder.writeIndex;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 使用和命令行相同的key threads/targets/cache/index/impact/mmap/instructions/write-index
+     *
+     * @param options 没有给出的key使用默认值 不认识的key会被忽略
+     */
+    public static ScanOptions of(Map<String, String> options) {
+        Builder builder = builder()
+                .targets(List.of(options.getOrDefault("targets", ServletScanner.DEFAULT_TARGET).split(",")))
+                .impact(Boolean.parseBoolean(options.getOrDefault("impact", "false")))
+                .mmap(Boolean.parseBoolean(options.getOrDefault("mmap", "false")))
+                .instructions(Boolean.parseBoolean(options.getOrDefault("instructions", "false")));
+        if (options.containsKey("threads")) {
+            builder.threads(Integer.parseInt(options.get("threads")));
+        }
+        if (options.containsKey("cache")) {
+            builder.cache(Path.of(options.get("cache")));
+        }
+        if (options.containsKey("index")) {
+            builder.index(Path.of(options.get("index")));
+        }
+        if (options.containsKey("write-index")) {
+            builder.writeIndex(Path.of(options.get("write-index")));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 扫描线程数 默认为cpu核数 线程数相同的scan共用Scanner中的同一个线程池
+     */
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * 目标命名空间 默认只有javax.servlet
+     */
+    public List<String> targets() {
+        return targets;
+    }
+
+    /**
+     * 增量扫描缓存文件 为null时不使用缓存
+     */
+    public Path cache() {
+        return cache;
+    }
+
+    /**
+     * 摘要索引文件 为null时不使用 命中的jar不再扫描 见DigestIndex
+     */
+    public Path index() {
+        return index;
+    }
+
+    /**
+     * 是否做传递影响分析 见ImpactGraph
+     */
+    public boolean impact() {
+        return impact;
+    }
+
+    /**
+     * 目录里的class是否通过内存映射读取
+     */
+    public boolean mmap() {
+        return mmap;
+    }
+
+    /**
+     * 是否记录方法体中每一条命中的指令 见MethodInstructions
+     */
+    public boolean instructions() {
+        return instructions;
+    }
+
+    /**
+     * scanCorpus结束后把结果写成摘要索引 为null时不写
+     */
+    public Path writeIndex() {
+        return writeIndex;
+    }
+
+    public static final class Builder {
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private List<String> targets = List.of(ServletScanner.DEFAULT_TARGET);
+        private Path cache;
+        private Path index;
+        private boolean impact;
+        private boolean mmap;
+        private boolean instructions;
+        private Path writeIndex;
+
+        private Builder() {
+        }
+
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder targets(List<String> targets) {
+            if (targets.isEmpty()) {
+                throw new IllegalArgumentException("targets must not be empty");
+            }
+            this.targets = List.copyOf(targets);
+            return this;
+        }
+
+        public Builder cache(Path cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder index(Path index) {
+            this.index = index;
+            return this;
+        }
+
+        public Builder impact(boolean impact) {
+            this.impact = impact;
+            return this;
+        }
+
+        public Builder mmap(boolean mmap) {
+            this.mmap = mmap;
+            return this;
+        }
+
+        public Builder instructions(boolean instructions) {
+            this.instructions = instructions;
+            return this;
+        }
+
+        public Builder writeIndex(Path writeIndex) {
+            this.writeIndex = writeIndex;
+            return this;
+        }
+
+        public ScanOptions build() {
+            return new ScanOptions(this);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 进程内使用的扫描入口 构建插件、IDE和服务可以直接嵌入 不需要启动子进程再解析文本输出
+ * <pre>
+ * try (Scanner scanner = new Scanner()) {
+ *     ScanOptions options = ScanOptions.builder().targets(List.of("javax.servlet", "javax.validation")).build();
+ *     scanner.scan(Path.of("app.war"), options, FindingSink.of(finding -> ...));
+ * }
+ * </pre>
+ * 结果边扫边回调 一个class解析完就会收到它的结果 回调的顺序和命令行输出一致 同一次scan内不会并发回调
+ * <p>
+ * Scanner是线程安全的 可以被多个线程同时调用和反复使用：
+ * 同一组目标只构建一次TargetMatcher 同一个缓存文件只加载一次 在close时统一写回
+ * 线程数相同的scan共用一个线程池 第一次用到时创建 在close时关闭
+ * 不同的scan之间不共享sink 不要把同一个sink同时交给两次scan
+ * <p>
+ * sink由调用方关闭 scan不会调用它的close
+ */
+public final class Scanner implements AutoCloseable {
+    private final ConcurrentHashMap<List<String>, TargetMatcher> matchers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, ScanCache> caches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, DigestIndex> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * @param input jar/war/ear/jmod、目录或者运行时镜像（含有lib/modules的目录）
+     */
+    public void scan(Path input, ScanOptions options, FindingSink sink) throws IOException {
+        scan(List.of(input), options, sink);
+    }
+
+    /**
+     * 按顺序扫描每个输入 结果都交给同一个sink
+     */
+    public void scan(List<Path> inputs, ScanOptions options, FindingSink sink) throws IOException {
+        scan(inputs, options, sink, null);
+    }
+
+    /**
+     * @param observer 每个class都会交给它 见ClassObserver
+     */
+    void scan(List<Path> inputs, ScanOptions options, FindingSink sink, ClassObserver observer) throws IOException {
+        run(options, sink, observer, (scanner, target) -> scanner.scan(inputs, target));
+    }
+
+    /**
+     * 批量扫描 摘要相同的归档只扫描一次 见CorpusScanner
+     * 指定了writeIndex时 扫描结束后把每个归档的结果写成摘要索引 见DigestIndex
+     */
+    public void scanCorpus(List<Path> artifacts, ScanOptions options, FindingSink sink) throws IOException {
+        List<String> namespaces = matchers.computeIfAbsent(options.targets(), TargetMatcher::of).namespaces();
+        run(options, sink, null, (scanner, target) -> {
+            CorpusScanner corpus = new CorpusScanner(scanner, options.threads());
+            corpus.scan(artifacts, target);
+            if (options.writeIndex() != null) {
+                DigestIndex.write(options.writeIndex(), namespaces, corpus.namespaces());
+                indexes.remove(options.writeIndex().toAbsolutePath().normalize());
+            }
+        });
+    }
+
+    /**
+     * 流会被完整读入内存 不会被关闭
+     *
+     * @param name 结果中的jar名
+     */
+    public void scan(String name, InputStream input, ScanOptions options, FindingSink sink) throws IOException {
+        scan(name, ByteBuffer.wrap(input.readAllBytes()), options, sink);
+    }
+
+    /**
+     * buffer的内容可以是一个归档 也可以是单个class 扫描期间不能修改 position和limit不会改变
+     *
+     * @param name 结果中的jar名
+     */
+    public void scan(String name, ByteBuffer buffer, ScanOptions options, FindingSink sink) throws IOException {
+        MemorySegment data = MemorySegment.ofBuffer(buffer);
+        run(options, sink, null, (scanner, target) -> scanner.scan(name, data, target));
+    }
+
+    private void run(ScanOptions options, FindingSink sink, ClassObserver observer, ScanJob job) throws IOException {
+        TargetMatcher matcher = matchers.computeIfAbsent(options.targets(), TargetMatcher::of);
+        ImpactGraph graph = options.impact() ? new ImpactGraph() : null;
+        ClassObserver observers = ClassObserver.both(graph, observer);
+        // 影响分析等需要看到每个class 指令级别需要每条指令 缓存里都没有 所以都不会和缓存同时使用
+        ScanCache cache = options.cache() == null || observers != null || options.instructions() ? null : cache(options.cache(), matcher.namespaces());
+        // 命中索引的jar不会被解析 同样需要看到每个class的不能用
+        DigestIndex index = options.index() == null || observers != null ? null : index(options.index(), matcher.namespaces());
+        ForkJoinPool pool = pools.computeIfAbsent(options.threads(), ForkJoinPool::new);
+        try (ParallelJarScanner scanner = new ParallelJarScanner(pool, matcher, cache, index, observers, options.mmap(), options.instructions())) {
+            job.run(scanner, graph == null ? sink : graph.recording(sink));
+        }
+        if (graph != null) {
+            graph.report(sink);
+        }
+    }
+
+    private ScanCache cache(Path path, List<String> targets) {
+        ScanCache cache = caches.computeIfAbsent(path.toAbsolutePath().normalize(), p -> ScanCache.load(p, targets));
+        if (!cache.targets().equals(ScanCache.targetSet(targets))) {
+            throw new IllegalArgumentException("cache " + path + " is already used with targets " + cache.targets());
+        }
+        return cache;
+    }
+
+    /**
+     * @return 文件不可用或者目标集合不同时返回null 即不使用索引
+     */
+    private DigestIndex index(Path path, List<String> targets) {
+        DigestIndex index = indexes.computeIfAbsent(path.toAbsolutePath().normalize(), DigestIndex::load);
+        if (index != null && !index.targets().equals(ScanCache.targetSet(targets))) {
+            System.err.println("ignore digest index " + path + ": built for targets " + index.targets());
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * 写回所有用到的缓存文件 关闭线程池
+     */
+    @Override
+    public void close() {
+        caches.values().forEach(ScanCache::save);
+        caches.clear();
+        pools.values().forEach(ForkJoinPool::shutdown);
+        pools.clear();
+    }
+
+    private interface ScanJob {
+        void run(ParallelJarScanner scanner, FindingSink sink) throws IOException;
+    }
+}
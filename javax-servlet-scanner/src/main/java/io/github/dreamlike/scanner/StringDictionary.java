@@ -0,0 +1,66 @@
+package io.github.dreamlike.scanner;
+
+import java.util.Arrays;
+
+/**
+ * 把字符串intern成从0开始的连续int id 相同的字符串只保留一份
+ * 开放寻址 slots里存的是id + 1 0表示空槽 不是线程安全的
+ */
+final class StringDictionary {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    int intern(String value) {
+        int mask = slots.length - 1;
+        int slot = spread(value.hashCode()) & mask;
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (values[id].equals(value)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        if (id == values.length) {
+            values = Arrays.copyOf(values, values.length << 1);
+        }
+        values[id] = value;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash(slots.length << 1);
+        }
+        return id;
+    }
+
+    String value(int id) {
+        return values[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 类名大多只有末尾几位不同 String.hashCode的低位会连成一片 线性探测下冲突很严重 先打散
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int capacity) {
+        int[] newSlots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(values[id].hashCode()) & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        slots = newSlots;
+    }
+}
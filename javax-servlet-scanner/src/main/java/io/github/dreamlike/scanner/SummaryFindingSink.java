@@ -0,0 +1,195 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static io.github.dreamlike.scanner.JsonLinesFindingSink.quote;
+
+/**
+ * Summary级别 只统计数量 不保留任何结果
+ * <p>
+ * 计数器是一个int数组 下标为 jar id * 单元数 + Location序号 * Detail数 + Detail序号 jar名由StringDictionary转成id
+ * 命中的类数按jar单独计数：同一个类的结果总是连续输出的 所以只需要和上一条比较类名 不需要记住见过的类
+ * 收到结果时不分配任何对象 排序和输出都在close时完成
+ * ParallelJarScanner在解析线程里直接把结果计入每批一个的Tally 输出阶段再整批累加 不会为每条结果创建ScannedClass
+ * <p>
+ * text格式先按结果数从多到少列出每个jar和它的分类计数 最后是所有jar合计的直方图
+ * jsonl格式每个jar一行 {"jar","classes","findings","counts":{"Location.DETAIL":n}}
+ */
+final class SummaryFindingSink implements FindingSink {
+    private static final ServletScanner.Location[] LOCATIONS = ServletScanner.Location.values();
+    private static final ServletScanner.Detail[] DETAILS = ServletScanner.Detail.values();
+    private static final int CELLS = LOCATIONS.length * DETAILS.length;
+    private static final int BAR_WIDTH = 40;
+
+    private final Writer writer;
+    private final boolean json;
+    private final StringDictionary jars = new StringDictionary();
+    private int[] counts = new int[16 * CELLS];
+    private int[] classes = new int[16];
+    private int lastJar = -1;
+    private String lastClass;
+
+    SummaryFindingSink(Writer writer, boolean json) {
+        this.writer = writer;
+        this.json = json;
+    }
+
+    @Override
+    public void accept(ServletScanner.ScannedClass finding) {
+        int jar = count(finding);
+        if (jar != lastJar || !finding.className().equals(lastClass)) {
+            classes[jar]++;
+            lastJar = jar;
+            lastClass = finding.className();
+        }
+    }
+
+    /**
+     * 间接受影响的类只计入TRANSITIVE_DEPENDENCY 不算作命中的类
+     */
+    @Override
+    public void acceptImpact(ServletScanner.ScannedClass finding, int depth) {
+        count(finding);
+    }
+
+    /**
+     * 累加一批结果 和逐条accept的统计一致
+     */
+    void add(String jarName, Tally tally) {
+        if (tally.classes == 0) {
+            return;
+        }
+        int jar = jar(jarName);
+        for (int cell = 0; cell < CELLS; cell++) {
+            counts[jar * CELLS + cell] += tally.counts[cell];
+        }
+        classes[jar] += jar == lastJar && tally.firstClass.equals(lastClass) ? tally.classes - 1 : tally.classes;
+        lastJar = jar;
+        lastClass = tally.lastClass;
+    }
+
+    private int count(ServletScanner.ScannedClass finding) {
+        int jar = jar(finding.jarName());
+        counts[jar * CELLS + finding.location().ordinal() * DETAILS.length + finding.detail().ordinal()]++;
+        return jar;
+    }
+
+    private int jar(String jarName) {
+        int jar = jars.intern(jarName);
+        if (jar == classes.length) {
+            classes = Arrays.copyOf(classes, jar << 1);
+            counts = Arrays.copyOf(counts, (jar << 1) * CELLS);
+        }
+        return jar;
+    }
+
+    @Override
+    public void close() throws IOException {
+        int jarCount = jars.size();
+        int[] total = new int[CELLS];
+        // 高32位是取反的结果数 低32位是jar id 排序后结果多的在前 相同时按出现顺序
+        long[] order = new long[jarCount];
+        for (int jar = 0; jar < jarCount; jar++) {
+            int findings = 0;
+            for (int cell = 0; cell < CELLS; cell++) {
+                findings += counts[jar * CELLS + cell];
+                total[cell] += counts[jar * CELLS + cell];
+            }
+            order[jar] = ((long) ~findings << 32) | jar;
+        }
+        Arrays.sort(order);
+        if (!json) {
+            writer.write("=== Detail Type: SUMMARY ===\nJAR Name | Classes | Findings\n");
+        }
+        for (long key : order) {
+            int jar = (int) key;
+            if (json) {
+                writeJson(jar, ~(int) (key >>> 32));
+            } else {
+                writeText(jar, ~(int) (key >>> 32));
+            }
+        }
+        if (!json) {
+            writeHistogram(total);
+        }
+        writer.flush();
+    }
+
+    private void writeText(int jar, int findings) throws IOException {
+        writer.write(jars.value(jar));
+        writer.write(" | " + classes[jar] + " | " + findings + "\n");
+        for (int cell : sortedCells(counts, jar * CELLS)) {
+            writer.write("    " + LOCATIONS[cell / DETAILS.length].name() + " | " + DETAILS[cell % DETAILS.length].name()
+                    + " | " + counts[jar * CELLS + cell] + "\n");
+        }
+    }
+
+    private void writeJson(int jar, int findings) throws IOException {
+        writer.write("{\"jar\":");
+        quote(writer, jars.value(jar));
+        writer.write(",\"classes\":" + classes[jar] + ",\"findings\":" + findings + ",\"counts\":{");
+        boolean first = true;
+        for (int cell : sortedCells(counts, jar * CELLS)) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write("\"" + LOCATIONS[cell / DETAILS.length].name() + "." + DETAILS[cell % DETAILS.length].name() + "\":" + counts[jar * CELLS + cell]);
+        }
+        writer.write("}}\n");
+    }
+
+    private void writeHistogram(int[] total) throws IOException {
+        writer.write("=== Histogram ===\nLocation | Detail | Count\n");
+        int[] cells = sortedCells(total, 0);
+        int max = cells.length == 0 ? 0 : total[cells[0]];
+        for (int cell : cells) {
+            writer.write(LOCATIONS[cell / DETAILS.length].name() + " | " + DETAILS[cell % DETAILS.length].name() + " | " + total[cell] + " ");
+            writer.write("#".repeat(Math.max(1, (int) ((long) total[cell] * BAR_WIDTH / max))));
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * @return 计数不为0的单元 按计数从多到少排序
+     */
+    private static int[] sortedCells(int[] counts, int offset) {
+        long[] keys = new long[CELLS];
+        int size = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            int count = counts[offset + cell];
+            if (count != 0) {
+                keys[size++] = ((long) ~count << 32) | cell;
+            }
+        }
+        Arrays.sort(keys, 0, size);
+        int[] cells = new int[size];
+        for (int i = 0; i < size; i++) {
+            cells[i] = (int) keys[i];
+        }
+        return cells;
+    }
+
+    /**
+     * 一批class的计数 由一个解析线程独占
+     */
+    static final class Tally implements ClassScanner.Findings {
+        private final int[] counts = new int[CELLS];
+        private int classes;
+        private String firstClass;
+        private String lastClass;
+
+        @Override
+        public void report(String className, ServletScanner.Location location, ServletScanner.Detail detail, String namespace, MethodInstructions instructions) {
+            counts[location.ordinal() * DETAILS.length + detail.ordinal()]++;
+            if (!className.equals(lastClass)) {
+                if (classes++ == 0) {
+                    firstClass = className;
+                }
+                lastClass = className;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.dreamlike.scanner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 把所有目标命名空间编译成一个Aho-Corasick自动机 一次扫描就能知道命中了哪些命名空间
+ * 每个命名空间同时匹配 点分（javax.servlet）和 内部名（javax/servlet）两种写法
+ * 匹配结果是一个long掩码 第i位表示第i个命名空间 所以最多支持64个命名空间
+ * <p>
+ * 目标都是ASCII 所以转移表只有128列 非ASCII字符直接回到根状态
+ * 转移表在构建时就补全了失败跳转 匹配时每个字符只需要查一次表
+ */
+final class TargetMatcher {
+    static final int MAX_NAMESPACES = Long.SIZE;
+    private static final int ALPHABET = 128;
+
+    private final List<String> namespaces;
+    private final int[] transitions;
+    private final long[] outputs;
+    private final long all;
+
+    private TargetMatcher(List<String> namespaces, int[] transitions, long[] outputs) {
+        this.namespaces = namespaces;
+        this.transitions = transitions;
+        this.outputs = outputs;
+        this.all = namespaces.size() == MAX_NAMESPACES ? -1L : (1L << namespaces.size()) - 1;
+    }
+
+    /**
+     * @param targets 命名空间 点分或者内部名的写法都可以 例如 javax.servlet javax/ws/rs
+     */
+    static TargetMatcher of(List<String> targets) {
+        ArrayList<String> namespaces = new ArrayList<>();
+        for (String target : targets) {
+            String namespace = target.trim().replace('/', '.');
+            if (namespace.isEmpty() || namespaces.contains(namespace)) {
+                continue;
+            }
+            for (int i = 0; i < namespace.length(); i++) {
+                if (namespace.charAt(i) >= ALPHABET) {
+                    throw new IllegalArgumentException("target namespace must be ASCII: " + target);
+                }
+            }
+            namespaces.add(namespace);
+        }
+        if (namespaces.isEmpty()) {
+            throw new IllegalArgumentException("at least one target namespace is required");
+        }
+        if (namespaces.size() > MAX_NAMESPACES) {
+            throw new IllegalArgumentException("at most " + MAX_NAMESPACES + " target namespaces are supported");
+        }
+
+        int capacity = 1;
+        for (String namespace : namespaces) {
+            capacity += namespace.length() * 2;
+        }
+        int[] transitions = new int[capacity * ALPHABET];
+        long[] outputs = new long[capacity];
+        int stateCount = 1;
+        for (int i = 0; i < namespaces.size(); i++) {
+            String namespace = namespaces.get(i);
+            for (String pattern : new String[]{namespace, namespace.replace('.', '/')}) {
+                int state = 0;
+                for (int j = 0; j < pattern.length(); j++) {
+                    int slot = state * ALPHABET + pattern.charAt(j);
+                    if (transitions[slot] == 0) {
+                        transitions[slot] = stateCount++;
+                    }
+                    state = transitions[slot];
+                }
+                outputs[state] |= 1L << i;
+            }
+        }
+
+        // BFS补全失败跳转 根的子节点失败后回到根
+        int[] fail = new int[stateCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = transitions[c];
+            if (next != 0) {
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] |= outputs[fail[state]];
+            for (int c = 0; c < ALPHABET; c++) {
+                int slot = state * ALPHABET + c;
+                int next = transitions[slot];
+                if (next != 0) {
+                    fail[next] = transitions[fail[state] * ALPHABET + c];
+                    queue.add(next);
+                } else {
+                    transitions[slot] = transitions[fail[state] * ALPHABET + c];
+                }
+            }
+        }
+        return new TargetMatcher(List.copyOf(namespaces), Arrays.copyOf(transitions, stateCount * ALPHABET), Arrays.copyOf(outputs, stateCount));
+    }
+
+    List<String> namespaces() {
+        return namespaces;
+    }
+
+    /**
+     * 所有命名空间都命中时的掩码 用于提前结束扫描
+     */
+    long all() {
+        return all;
+    }
+
+    /**
+     * @param index 掩码中的位
+     */
+    String namespace(int index) {
+        return namespaces.get(index);
+    }
+
+    long match(byte[] data) {
+        long mask = 0;
+        int state = 0;
+        for (byte b : data) {
+            // 负数（非ASCII）回到根
+            state = b < 0 ? 0 : transitions[state * ALPHABET + b];
+            long output = outputs[state];
+            if (output != 0) {
+                mask |= output;
+                if (mask == all) {
+                    return mask;
+                }
+            }
+        }
+        return mask;
+    }
+
+    long match(String value) {
+        return match(value, 0, value.length());
+    }
+
+    /**
+     * 只匹配[from, to)这一段 用于在描述符上逐个匹配参数 不需要截取子串
+     */
+    long match(String value, int from, int to) {
+        long mask = 0;
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            state = c >= ALPHABET ? 0 : transitions[state * ALPHABET + c];
+            mask |= outputs[state];
+        }
+        return mask;
+    }
+}
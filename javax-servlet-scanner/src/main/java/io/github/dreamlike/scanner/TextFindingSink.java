@@ -0,0 +1,105 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 原来的文本表格格式 传递影响的结果在表格结尾之后单独一段
+ * 扫描多个命名空间时Class及以上级别多一列Namespace 只有一个命名空间时和原来的格式完全一样
+ * Instruction级别下方法上的结果多一列方法名和描述符 方法体的结果之后每条命中的指令缩进单独一行：偏移 助记符 行号
+ */
+final class TextFindingSink extends AbstractFindingSink {
+    private final boolean namespaceColumn;
+    private boolean impactStarted;
+
+    TextFindingSink(Writer writer, ServletScanner.DetailType detailType, boolean namespaceColumn) throws IOException {
+        super(writer, detailType);
+        this.namespaceColumn = namespaceColumn;
+        String namespace = namespaceColumn ? " | Namespace" : "";
+        switch (detailType) {
+            case Jar -> writer.write("=== Detail Type: JAR ===\nJAR Name:\n");
+            case Class -> writer.write("=== Detail Type: CLASS ===\nJAR Name                         | Class Name" + namespace + "\n");
+            case ALL -> writer.write("=== Detail Type: ALL ===\nJAR Name | Class Name | Location" + namespace + " | Detail\n"
+                    + "--------------------------------------------------------------\n");
+            case Instruction -> writer.write("=== Detail Type: INSTRUCTION ===\nJAR Name | Class Name | Location" + namespace + " | Detail | Method\n"
+                    + "    @Offset | Opcode | Line\n"
+                    + "--------------------------------------------------------------\n");
+            default -> {
+            }
+        }
+    }
+
+    @Override
+    protected void write(ServletScanner.ScannedClass finding) throws IOException {
+        writer.write(finding.jarName());
+        if (detailType != ServletScanner.DetailType.Jar) {
+            writer.write(" | ");
+            writer.write(finding.className());
+        }
+        if (detailed()) {
+            writer.write(" | ");
+            writer.write(finding.location().name());
+        }
+        if (namespaceColumn && detailType != ServletScanner.DetailType.Jar) {
+            writer.write(" | ");
+            writer.write(finding.namespace());
+        }
+        if (detailed()) {
+            writer.write(" | ");
+            writer.write(finding.detail().describe(finding.namespace()));
+        }
+        MethodInstructions instructions = finding.instructions();
+        if (instructions != null && detailType == ServletScanner.DetailType.Instruction) {
+            writer.write(" | ");
+            writer.write(instructions.name());
+            writer.write(instructions.descriptor());
+        }
+        writer.write('\n');
+        if (instructions != null && detailType == ServletScanner.DetailType.Instruction) {
+            for (int i = 0; i < instructions.size(); i++) {
+                writer.write("    @");
+                writer.write(Integer.toString(instructions.offset(i)));
+                writer.write(" | ");
+                writer.write(instructions.mnemonic(i));
+                writer.write(" | ");
+                writer.write(instructions.line(i) == MethodInstructions.NO_LINE ? "-" : Integer.toString(instructions.line(i)));
+                writer.write('\n');
+            }
+        }
+    }
+
+    @Override
+    protected void writeImpact(ServletScanner.ScannedClass finding, int depth) throws IOException {
+        if (!impactStarted) {
+            impactStarted = true;
+            footer();
+            writer.write("=== Impact ===\nJAR Name | Class Name" + (namespaceColumn ? " | Namespace" : "") + " | Depth\n");
+        }
+        writer.write(finding.jarName());
+        writer.write(" | ");
+        writer.write(finding.className());
+        if (namespaceColumn) {
+            writer.write(" | ");
+            writer.write(finding.namespace());
+        }
+        writer.write(" | ");
+        writer.write(Integer.toString(depth));
+        writer.write('\n');
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        if (!impactStarted) {
+            footer();
+        }
+    }
+
+    private void footer() throws IOException {
+        switch (detailType) {
+            case Jar -> writer.write("---------\n");
+            case Class -> writer.write("--------------------------------|------------------------------\n");
+            default -> {
+            }
+        }
+    }
+}
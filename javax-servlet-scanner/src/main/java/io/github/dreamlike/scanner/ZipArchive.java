@@ -0,0 +1,221 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 直接在MemorySegment上读取zip 只解析central directory
+ * STORED的条目直接返回原segment的切片 DEFLATED的条目每次只解压这一个条目
+ * 所以内存峰值只取决于最大的单个条目 而不是所有嵌套jar的总和
+ */
+final class ZipArchive {
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private final MemorySegment segment;
+    private final List<Entry> entries;
+    /**
+     * zip前面可能还有别的数据 例如自解压脚本 此时central directory中记录的偏移需要加上这个值
+     */
+    private final long bias;
+    private final long cenPos;
+    private final long cenSize;
+
+    private ZipArchive(MemorySegment segment, List<Entry> entries, long bias, long cenPos, long cenSize) {
+        this.segment = segment;
+        this.entries = entries;
+        this.bias = bias;
+        this.cenPos = cenPos;
+        this.cenSize = cenSize;
+    }
+
+    static ZipArchive open(MemorySegment segment) throws IOException {
+        long endPos = findEnd(segment);
+        long cenSize = Integer.toUnsignedLong(segment.get(INT, endPos + 12));
+        long cenOffset = Integer.toUnsignedLong(segment.get(INT, endPos + 16));
+        long total = Short.toUnsignedInt(segment.get(SHORT, endPos + 10));
+        long cenEnd = endPos;
+        long locatorPos = endPos - 20;
+        if (locatorPos >= 0 && segment.get(INT, locatorPos) == ZIP64_LOCATOR_SIG) {
+            long zip64EndPos = segment.get(LONG, locatorPos + 8);
+            if (zip64EndPos < 0 || zip64EndPos > locatorPos - 56 || segment.get(INT, zip64EndPos) != ZIP64_END_SIG) {
+                // 有前置数据时记录的偏移不准 按照紧贴locator的位置再找一次
+                zip64EndPos = locatorPos - 56;
+            }
+            if (zip64EndPos >= 0 && segment.get(INT, zip64EndPos) == ZIP64_END_SIG) {
+                total = segment.get(LONG, zip64EndPos + 32);
+                cenSize = segment.get(LONG, zip64EndPos + 40);
+                cenOffset = segment.get(LONG, zip64EndPos + 48);
+                cenEnd = zip64EndPos;
+            }
+        }
+        return readCentralDirectory(segment, cenEnd - cenSize, cenSize, total, cenEnd - cenSize - cenOffset);
+    }
+
+    private static ZipArchive readCentralDirectory(MemorySegment segment, long cenPos, long cenSize, long total, long bias) throws IOException {
+        if (cenPos < 0 || bias < 0) {
+            throw new ZipException("invalid central directory");
+        }
+        ArrayList<Entry> entries = new ArrayList<>((int) Math.min(total, 1 << 16));
+        long pos = cenPos;
+        long end = cenPos + cenSize;
+        while (pos < end) {
+            if (segment.get(INT, pos) != CEN_SIG) {
+                throw new ZipException("invalid central directory header at " + pos);
+            }
+            int method = Short.toUnsignedInt(segment.get(SHORT, pos + 10));
+            long crc = Integer.toUnsignedLong(segment.get(INT, pos + 16));
+            long compressedSize = Integer.toUnsignedLong(segment.get(INT, pos + 20));
+            long size = Integer.toUnsignedLong(segment.get(INT, pos + 24));
+            int nameLength = Short.toUnsignedInt(segment.get(SHORT, pos + 28));
+            int extraLength = Short.toUnsignedInt(segment.get(SHORT, pos + 30));
+            int commentLength = Short.toUnsignedInt(segment.get(SHORT, pos + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(segment.get(INT, pos + 42));
+            String name = new String(segment.asSlice(pos + CEN_HEADER_SIZE, nameLength).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                long extra = pos + CEN_HEADER_SIZE + nameLength;
+                long extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = Short.toUnsignedInt(segment.get(SHORT, extra));
+                    int length = Short.toUnsignedInt(segment.get(SHORT, extra + 2));
+                    if (id == ZIP64_EXTRA_ID) {
+                        long field = extra + 4;
+                        if (size == ZIP64_MAGIC) {
+                            size = segment.get(LONG, field);
+                            field += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC) {
+                            compressedSize = segment.get(LONG, field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC) {
+                            localHeaderOffset = segment.get(LONG, field);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+            entries.add(new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+            pos += CEN_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return new ZipArchive(segment, entries, bias, cenPos, cenSize);
+    }
+
+    private static long findEnd(MemorySegment segment) throws IOException {
+        long size = segment.byteSize();
+        // 注释最长65535字节
+        long minPos = Math.max(0, size - END_HEADER_SIZE - 0xFFFF);
+        for (long pos = size - END_HEADER_SIZE; pos >= minPos; pos--) {
+            if (segment.get(INT, pos) == END_SIG) {
+                return pos;
+            }
+        }
+        throw new ZipException("zip END header not found");
+    }
+
+    /**
+     * 整个归档的字节 包括前置数据
+     */
+    MemorySegment data() {
+        return segment;
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * central directory的原始字节 里面有每个条目的crc和大小 可以用来判断整个jar有没有变化
+     */
+    MemorySegment centralDirectory() {
+        return segment.asSlice(cenPos, cenSize);
+    }
+
+    /**
+     * STORED条目直接返回切片 不会复制
+     */
+    MemorySegment content(Entry entry) throws IOException {
+        MemorySegment data = rawData(entry);
+        return switch (entry.method()) {
+            case STORED -> data;
+            case DEFLATED -> MemorySegment.ofArray(inflate(data, entry));
+            default -> throw new ZipException("unsupported compression method " + entry.method() + " for " + entry.name());
+        };
+    }
+
+    byte[] bytes(Entry entry) throws IOException {
+        MemorySegment data = rawData(entry);
+        return switch (entry.method()) {
+            case STORED -> data.toArray(ValueLayout.JAVA_BYTE);
+            case DEFLATED -> inflate(data, entry);
+            default -> throw new ZipException("unsupported compression method " + entry.method() + " for " + entry.name());
+        };
+    }
+
+    private MemorySegment rawData(Entry entry) throws IOException {
+        long loc = entry.localHeaderOffset() + bias;
+        if (segment.get(INT, loc) != LOC_SIG) {
+            throw new ZipException("invalid local header for " + entry.name());
+        }
+        int nameLength = Short.toUnsignedInt(segment.get(SHORT, loc + 26));
+        int extraLength = Short.toUnsignedInt(segment.get(SHORT, loc + 28));
+        return segment.asSlice(loc + LOC_HEADER_SIZE + nameLength + extraLength, entry.compressedSize());
+    }
+
+    private static byte[] inflate(MemorySegment data, Entry entry) throws IOException {
+        if (entry.size() > Integer.MAX_VALUE - 8) {
+            throw new ZipException("entry too large: " + entry.name());
+        }
+        byte[] result = new byte[(int) entry.size()];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data.asByteBuffer());
+            int offset = 0;
+            while (offset < result.length && !inflater.finished()) {
+                int n = inflater.inflate(result, offset, result.length - offset);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += n;
+            }
+            if (offset != result.length) {
+                throw new ZipException("truncated entry: " + entry.name());
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new ZipException("invalid deflate data in " + entry.name() + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    record Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.dreamlike.agent;
+
+import io.github.dreamlike.scanner.AllowlistFiles;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.classfile.ClassFile;
+import java.lang.constant.ClassDesc;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 白名单的格式和类名hash在扫描器和agent中各有一份 这里用扫描器写、agent读 确认两边一致
+ */
+public class AllowlistRoundTripTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] clean = ClassFile.of().build(ClassDesc.of("lib.Clean"), classBuilder -> {
+    });
+    private final byte[] uses = ClassFile.of().build(ClassDesc.of("lib.Uses"),
+            classBuilder -> classBuilder.withSuperclass(ClassDesc.of("javax.servlet.http.HttpServlet")));
+
+    @Test
+    public void testHash() {
+        for (String className : List.of("", "lib/Clean", "lib/Clean$1", "中文/类名", "a".repeat(1000))) {
+            Assert.assertEquals(className, AllowlistFiles.hash(className), Allowlist.hash(className));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Path jar = jar("lib.jar", clean, uses);
+        Path other = jar("other.jar", clean, clean);
+        Path allowlistPath = folder.getRoot().toPath().resolve("allowlist.bin");
+        AllowlistFiles.write(allowlistPath, List.of(jar), List.of(clean, uses));
+
+        Allowlist allowlist = Allowlist.load(allowlistPath);
+        Assert.assertNotNull(allowlist);
+        CodeSource fileSource = codeSource(jar.toUri().toURL());
+        CodeSource jarSource = codeSource(new URL("jar:" + jar.toUri() + "!/"));
+        CodeSource otherSource = codeSource(other.toUri().toURL());
+        CodeSource dirSource = codeSource(folder.getRoot().toURI().toURL());
+
+        // 摘要在后台线程计算 结果出来之前不能跳过
+        Assert.assertTrue(awaitSkip(allowlist, "lib/Clean", fileSource));
+        Assert.assertTrue(awaitSkip(allowlist, "lib/Clean", jarSource));
+        Assert.assertFalse(awaitSkip(allowlist, "lib/Uses", fileSource));
+        Assert.assertFalse(awaitSkip(allowlist, "lib/Clean$$Proxy", fileSource));
+        Assert.assertFalse(awaitSkip(allowlist, "lib/Clean", otherSource));
+        Assert.assertFalse(awaitSkip(allowlist, "lib/Clean", dirSource));
+        Assert.assertFalse(allowlist.canSkip(null, fileSource));
+    }
+
+    /**
+     * 扫描目录时不会打开其中的war 白名单里不能有它的摘要 否则war里和已扫描的干净类同名的类会被跳过
+     */
+    @Test
+    public void testDirectoryWithUnscannedWar() throws Exception {
+        byte[] dirty = ClassFile.of().build(ClassDesc.of("lib.Clean"),
+                classBuilder -> classBuilder.withSuperclass(ClassDesc.of("javax.servlet.http.HttpServlet")));
+        Path app = folder.newFolder("app").toPath();
+        Path jar = Files.move(jar("lib.jar", clean, uses), app.resolve("lib.jar"));
+        Path war = Files.move(jar("app.war", dirty, uses), app.resolve("app.war"));
+        Path allowlistPath = folder.getRoot().toPath().resolve("allowlist.bin");
+        AllowlistFiles.scan(allowlistPath, List.of(app));
+
+        Allowlist allowlist = Allowlist.load(allowlistPath);
+        Assert.assertNotNull(allowlist);
+        Assert.assertTrue(awaitSkip(allowlist, "lib/Clean", codeSource(jar.toUri().toURL())));
+        Assert.assertFalse(awaitSkip(allowlist, "lib/Clean", codeSource(war.toUri().toURL())));
+    }
+
+    @Test
+    public void testBrokenFile() throws IOException {
+        Path broken = folder.newFile("broken.bin").toPath();
+        Files.write(broken, new byte[]{1, 2, 3});
+        Assert.assertNull(Allowlist.load(broken));
+    }
+
+    private static boolean awaitSkip(Allowlist allowlist, String className, CodeSource codeSource) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if (allowlist.canSkip(className, codeSource)) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    private static CodeSource codeSource(URL location) {
+        return new CodeSource(location, (Certificate[]) null);
+    }
+
+    private Path jar(String name, byte[] first, byte[] second) throws IOException {
+        Path jar = folder.getRoot().toPath().resolve(name);
+        try (OutputStream file = Files.newOutputStream(jar); ZipOutputStream output = new ZipOutputStream(file)) {
+            output.putNextEntry(new ZipEntry("lib/Clean.class"));
+            output.write(first);
+            output.putNextEntry(new ZipEntry("lib/Uses.class"));
+            output.write(second);
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.dreamlike.scanner;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 给agent一侧的测试生成白名单 AllowlistWriter是包内可见的
+ */
+public final class AllowlistFiles {
+    private AllowlistFiles() {
+    }
+
+    /**
+     * @param archives 当作被扫描过的归档
+     */
+    public static void write(Path allowlist, List<Path> archives, List<byte[]> classes) throws IOException {
+        AllowlistWriter writer = new AllowlistWriter();
+        for (Path archive : archives) {
+            writer.archive(archive.toString(), MemorySegment.ofArray(Files.readAllBytes(archive)));
+        }
+        for (byte[] classBytes : classes) {
+            writer.addClass("test.jar", classBytes, ClassFile.of().parse(classBytes));
+        }
+        writer.write(allowlist);
+    }
+
+    /**
+     * 和--allowlist一样 用扫描器扫描这些输入的同时生成白名单
+     */
+    public static void scan(Path allowlist, List<Path> inputs) throws IOException {
+        AllowlistWriter writer = new AllowlistWriter();
+        try (ParallelJarScanner scanner = new ParallelJarScanner(2, TargetMatcher.of(AgentCostEstimator.AGENT_TARGETS), null, null, writer, false, false)) {
+            scanner.scan(inputs, FindingSink.of(_ -> {
+            }));
+        }
+        writer.write(allowlist);
+    }
+
+    public static long hash(String className) {
+        return AllowlistWriter.hash(className);
+    }
+}
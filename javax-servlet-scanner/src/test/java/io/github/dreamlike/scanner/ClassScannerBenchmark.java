@@ -0,0 +1,137 @@
+package io.github.dreamlike.scanner;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.attribute.ExceptionsAttribute;
+import java.lang.classfile.attribute.RuntimeVisibleAnnotationsAttribute;
+import java.lang.classfile.attribute.SignatureAttribute;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * ClassScanner的吞吐和分配 默认不运行（不是单元测试） 需要显式启动：
+ * <pre>
+ * mvn -pl javax-servlet-scanner test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp javax-servlet-scanner/target/test-classes:javax-servlet-scanner/target/classes:$(cat javax-servlet-scanner/target/cp.txt) \
+ *     org.openjdk.jmh.Main ClassScannerBenchmark -prof gc
+ * </pre>
+ * 一次操作扫描一个class 所以 ops/s 就是每秒扫描的类数 -prof gc 中的 gc.alloc.rate.norm 就是每个类分配的字节数
+ * scanClassStream是之前基于Stream的实现（StreamClassScanner） 在同一次运行里和scanClass对比
+ * <p>
+ * corpus=jdk 是java.base中的真实class 几乎都不会命中 主要看前置过滤的开销
+ * corpus=javax 是合成的class 继承HttpServlet、参数/字段/异常/注解/方法体都引用javax.servlet 每条规则都会走到
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassScannerBenchmark {
+    private static final int SYNTHETIC_CLASSES = 512;
+    private static final int JDK_CLASSES = 4096;
+
+    private static final ClassDesc HTTP_SERVLET = ClassDesc.of("javax.servlet.http.HttpServlet");
+    private static final ClassDesc REQUEST = ClassDesc.of("javax.servlet.http.HttpServletRequest");
+    private static final ClassDesc RESPONSE = ClassDesc.of("javax.servlet.http.HttpServletResponse");
+    private static final ClassDesc CONTEXT = ClassDesc.of("javax.servlet.ServletContext");
+    private static final ClassDesc SERVLET_EXCEPTION = ClassDesc.of("javax.servlet.ServletException");
+    private static final ClassDesc WEB_SERVLET = ClassDesc.of("javax.servlet.annotation.WebServlet");
+
+    @Param({"jdk", "javax"})
+    public String corpus;
+
+    private byte[][] classes;
+    private int next;
+    private int found;
+    private TargetMatcher matcher;
+    private ClassScanner.Findings findings;
+
+    @Setup
+    public void setup() throws IOException {
+        matcher = TargetMatcher.of(List.of(ServletScanner.DEFAULT_TARGET));
+        findings = (className, location, detail, namespace, instructions) -> found++;
+        classes = corpus.equals("jdk") ? jdkClasses() : syntheticClasses();
+    }
+
+    @Benchmark
+    public int scanClass() {
+        byte[] classBytes = classes[next];
+        next = next + 1 == classes.length ? 0 : next + 1;
+        ClassScanner.scan(classBytes, matcher, findings);
+        return found;
+    }
+
+    /**
+     * 对照组 改成单遍访问之前基于Stream的实现
+     */
+    @Benchmark
+    public int scanClassStream() {
+        byte[] classBytes = classes[next];
+        next = next + 1 == classes.length ? 0 : next + 1;
+        StreamClassScanner.scan("bench", classBytes, matcher).forEach(_ -> found++);
+        return found;
+    }
+
+    private static byte[][] jdkClasses() throws IOException {
+        Path modules = FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules/java.base");
+        ArrayList<byte[]> result = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(modules)) {
+            for (Path path : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".class")).sorted().limit(JDK_CLASSES)::iterator) {
+                result.add(Files.readAllBytes(path));
+            }
+        }
+        return result.toArray(byte[][]::new);
+    }
+
+    private static byte[][] syntheticClasses() {
+        byte[][] result = new byte[SYNTHETIC_CLASSES][];
+        MethodTypeDesc service = MethodTypeDesc.of(ConstantDescs.CD_void, REQUEST, RESPONSE);
+        MethodTypeDesc getParameter = MethodTypeDesc.of(ConstantDescs.CD_String, ConstantDescs.CD_String);
+        for (int i = 0; i < SYNTHETIC_CLASSES; i++) {
+            ClassDesc self = ClassDesc.of("bench.Servlet" + i);
+            result[i] = ClassFile.of().build(self, classBuilder -> classBuilder
+                    .withSuperclass(HTTP_SERVLET)
+                    .with(RuntimeVisibleAnnotationsAttribute.of(java.lang.classfile.Annotation.of(WEB_SERVLET)))
+                    .withField("context", CONTEXT, ClassFile.ACC_PRIVATE)
+                    .withField("names", ConstantDescs.CD_List, fieldBuilder -> fieldBuilder
+                            .with(SignatureAttribute.of(java.lang.classfile.Signature.parseFrom("Ljava/util/List<Ljavax/servlet/http/Cookie;>;"))))
+                    .withMethod("<init>", ConstantDescs.MTD_void, ClassFile.ACC_PUBLIC, methodBuilder -> methodBuilder
+                            .withCode(code -> code
+                                    .aload(0)
+                                    .invokespecial(HTTP_SERVLET, ConstantDescs.INIT_NAME, ConstantDescs.MTD_void)
+                                    .return_()))
+                    .withMethod("doGet", service, ClassFile.ACC_PROTECTED, methodBuilder -> methodBuilder
+                            .with(ExceptionsAttribute.ofSymbols(SERVLET_EXCEPTION))
+                            .withCode(code -> code
+                                    .aload(1)
+                                    .ldc("name")
+                                    .invokeinterface(REQUEST, "getParameter", getParameter)
+                                    .pop()
+                                    .return_()))
+                    .withMethod("plain", MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int), ClassFile.ACC_PUBLIC, methodBuilder -> methodBuilder
+                            .withCode(code -> code
+                                    .iload(1)
+                                    .ireturn())));
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ClassScannerBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+}
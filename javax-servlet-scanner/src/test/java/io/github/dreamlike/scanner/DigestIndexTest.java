@@ -0,0 +1,89 @@
+package io.github.dreamlike.scanner;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class DigestIndexTest {
+    private static final List<String> TARGETS = List.of("javax.validation", "javax.servlet");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        MemorySegment clean = centralDirectory("clean");
+        MemorySegment affected = centralDirectory("affected");
+        Path path = folder.getRoot().toPath().resolve("index/digest.bin");
+        DigestIndex.write(path, TARGETS, Map.of(
+                ScanCache.digest(clean), Set.of(),
+                ScanCache.digest(affected), Set.of("javax.servlet", "javax.validation", "javax.unknown")
+        ));
+
+        DigestIndex index = DigestIndex.load(path);
+        Assert.assertNotNull(index);
+        Assert.assertEquals(ScanCache.targetSet(TARGETS), index.targets());
+        Assert.assertEquals(-1, index.find(centralDirectory("unknown")));
+
+        int cleanRecord = index.find(clean);
+        Assert.assertTrue(cleanRecord >= 0);
+        Assert.assertEquals(List.of(), index.findings(cleanRecord));
+
+        int affectedRecord = index.find(affected);
+        Assert.assertTrue(affectedRecord >= 0);
+        // 按排序后的目标输出 不在目标里的命名空间被丢掉
+        Assert.assertEquals(List.of(
+                new ScanCache.Finding(DigestIndex.ARCHIVE, ServletScanner.Location.Class, ServletScanner.Detail.KNOWN_AFFECTED, "javax.servlet"),
+                new ScanCache.Finding(DigestIndex.ARCHIVE, ServletScanner.Location.Class, ServletScanner.Detail.KNOWN_AFFECTED, "javax.validation")
+        ), index.findings(affectedRecord));
+
+        ArrayList<ServletScanner.ScannedClass> reported = new ArrayList<>();
+        index.report(affectedRecord, "lib.jar", reported::add);
+        Assert.assertEquals(2, reported.size());
+        Assert.assertEquals("lib.jar", reported.get(0).jarName());
+        Assert.assertEquals(ServletScanner.Detail.KNOWN_AFFECTED, reported.get(0).detail());
+    }
+
+    @Test
+    public void testManyRecords() throws IOException {
+        HashMap<String, Set<String>> records = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            records.put(ScanCache.digest(centralDirectory("jar" + i)), i % 3 == 0 ? Set.of("javax.servlet") : Set.of());
+        }
+        Path path = folder.getRoot().toPath().resolve("digest.bin");
+        DigestIndex.write(path, TARGETS, records);
+        DigestIndex index = DigestIndex.load(path);
+        for (int i = 0; i < 100; i++) {
+            int record = index.find(centralDirectory("jar" + i));
+            Assert.assertTrue(record >= 0);
+            Assert.assertEquals(i % 3 == 0 ? 1 : 0, index.findings(record).size());
+        }
+    }
+
+    @Test
+    public void testBrokenFile() throws IOException {
+        Path path = folder.newFile("digest.bin").toPath();
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        Assert.assertNull(DigestIndex.load(path));
+        Assert.assertNull(DigestIndex.load(folder.getRoot().toPath().resolve("missing.bin")));
+    }
+
+    /**
+     * 索引只关心central directory的摘要 内容是什么无所谓
+     */
+    private static MemorySegment centralDirectory(String content) {
+        return MemorySegment.ofArray(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.dreamlike.scanner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FindingSinkTest {
+    private static final ServletScanner.ScannedClass FIELD = new ServletScanner.ScannedClass("app.jar", "a.Uses",
+            ServletScanner.Location.Field, ServletScanner.Detail.FIELD_TYPE, "javax.servlet");
+    private static final ServletScanner.ScannedClass METHOD = new ServletScanner.ScannedClass("app.jar", "a.Uses",
+            ServletScanner.Location.Method, ServletScanner.Detail.METHOD_PARAMETER, "javax.servlet");
+    private static final ServletScanner.ScannedClass OTHER = new ServletScanner.ScannedClass("lib \"x\".jar", "b.Other",
+            ServletScanner.Location.Class, ServletScanner.Detail.EXTEND_CLASS, "javax.validation");
+    private static final ServletScanner.ScannedClass IMPACT = new ServletScanner.ScannedClass("app.jar", "a.Caller",
+            ServletScanner.Location.Class, ServletScanner.Detail.TRANSITIVE_DEPENDENCY, "javax.servlet");
+
+    @Test
+    public void testJsonLinesClass() throws IOException {
+        Assert.assertEquals("""
+                {"jar":"app.jar","class":"a.Uses","namespace":"javax.servlet"}
+                {"jar":"lib \\"x\\".jar","class":"b.Other","namespace":"javax.validation"}
+                {"jar":"app.jar","class":"a.Caller","namespace":"javax.servlet","detail":"TRANSITIVE_DEPENDENCY","depth":2}
+                """, write(FindingSink.Format.jsonl, ServletScanner.DetailType.Class));
+    }
+
+    @Test
+    public void testJsonLinesAll() throws IOException {
+        String output = write(FindingSink.Format.jsonl, ServletScanner.DetailType.ALL);
+        Assert.assertEquals(4, output.lines().count());
+        Assert.assertTrue(output, output.startsWith("{\"jar\":\"app.jar\",\"class\":\"a.Uses\",\"location\":\"Field\",\"namespace\":\"javax.servlet\","
+                + "\"detail\":\"FIELD_TYPE\",\"message\":\"Current Field has javax.servlet type\"}\n"));
+    }
+
+    @Test
+    public void testTextJar() throws IOException {
+        Assert.assertEquals("""
+                === Detail Type: JAR ===
+                JAR Name:
+                app.jar
+                lib "x".jar
+                ---------
+                === Impact ===
+                JAR Name | Class Name | Depth
+                app.jar | a.Caller | 2
+                """, write(FindingSink.Format.text, ServletScanner.DetailType.Jar));
+    }
+
+    /**
+     * 只有扫描多个命名空间时才有Namespace列
+     */
+    @Test
+    public void testTextNamespaceColumn() throws IOException {
+        StringWriter writer = new StringWriter();
+        try (FindingSink sink = FindingSink.create(FindingSink.Format.text, ServletScanner.DetailType.Class, writer,
+                List.of("javax.servlet", "javax.validation"))) {
+            sink.accept(FIELD);
+            sink.accept(OTHER);
+            sink.acceptImpact(IMPACT, 2);
+        }
+        Assert.assertEquals("""
+                === Detail Type: CLASS ===
+                JAR Name                         | Class Name | Namespace
+                app.jar | a.Uses | javax.servlet
+                lib "x".jar | b.Other | javax.validation
+                --------------------------------|------------------------------
+                === Impact ===
+                JAR Name | Class Name | Namespace | Depth
+                app.jar | a.Caller | javax.servlet | 2
+                """, writer.toString());
+    }
+
+    @Test
+    public void testTextWithoutImpact() throws IOException {
+        StringWriter writer = new StringWriter();
+        try (FindingSink sink = FindingSink.create(FindingSink.Format.text, ServletScanner.DetailType.Class, writer)) {
+            sink.accept(FIELD);
+            sink.accept(METHOD);
+        }
+        Assert.assertEquals("""
+                === Detail Type: CLASS ===
+                JAR Name                         | Class Name
+                app.jar | a.Uses
+                --------------------------------|------------------------------
+                """, writer.toString());
+    }
+
+    @Test
+    public void testSarifUri() throws IOException {
+        Path jar = Path.of("build", "my app.jar").toAbsolutePath();
+        StringWriter writer = new StringWriter();
+        try (FindingSink sink = FindingSink.create(FindingSink.Format.sarif, ServletScanner.DetailType.ALL, writer)) {
+            sink.accept(new ServletScanner.ScannedClass(jar.toString(), "a.Uses",
+                    ServletScanner.Location.Class, ServletScanner.Detail.EXTEND_CLASS, "javax.servlet"));
+            sink.accept(OTHER);
+        }
+        String output = writer.toString();
+        Assert.assertTrue(output, output.contains("\"artifactLocation\":{\"uri\":\"" + jar.toUri() + "\"}"));
+        Assert.assertTrue(output, output.contains("\"artifactLocation\":{\"uri\":\"lib%20%22x%22.jar\",\"uriBaseId\":\"%SRCROOT%\"}"));
+    }
+
+    @Test
+    public void testConsumer() throws IOException {
+        ArrayList<ServletScanner.ScannedClass> findings = new ArrayList<>();
+        try (FindingSink sink = FindingSink.of(findings::add)) {
+            sink.accept(FIELD);
+            sink.acceptImpact(IMPACT, 1);
+        }
+        Assert.assertEquals(List.of(FIELD), findings);
+    }
+
+    private static String write(FindingSink.Format format, ServletScanner.DetailType detailType) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (FindingSink sink = FindingSink.create(format, detailType, writer)) {
+            sink.accept(FIELD);
+            sink.accept(METHOD);
+            sink.accept(OTHER);
+            sink.acceptImpact(IMPACT, 2);
+        }
+        return writer.toString();
+    }
+}
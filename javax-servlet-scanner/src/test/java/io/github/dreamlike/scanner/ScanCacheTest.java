@@ -0,0 +1,113 @@
+package io.github.dreamlike.scanner;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScanCacheTest {
+    private static final List<String> TARGETS = List.of("javax.validation", "javax.servlet");
+    private static final ScanCache.ClassKey CLEAN = new ScanCache.ClassKey("a/Clean.class", 1, 10);
+    private static final ScanCache.ClassKey USES = new ScanCache.ClassKey("a/Uses.class", 2, 20);
+    private static final ScanCache.ClassKey NESTED = new ScanCache.ClassKey("b/Nested.class", 3, 30);
+    private static final ScanCache.Finding FINDING = new ScanCache.Finding("a.Uses", ServletScanner.Location.Method,
+            ServletScanner.Detail.METHOD_PARAMETER, "javax.servlet");
+    private static final ScanCache.Finding NESTED_FINDING = new ScanCache.Finding("b.Nested", ServletScanner.Location.Class,
+            ServletScanner.Detail.EXTEND_CLASS, "javax.servlet");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTargetSet() {
+        Assert.assertEquals("javax.servlet,javax.validation", ScanCache.targetSet(TARGETS));
+        Assert.assertEquals(ScanCache.targetSet(TARGETS), ScanCache.targetSet(List.of("javax.servlet", "javax.validation")));
+    }
+
+    /**
+     * 嵌套jar或者某个class还没有结果时整个jar都不算命中
+     */
+    @Test
+    public void testIncompleteJar() {
+        ScanCache cache = ScanCache.inMemory(TARGETS);
+        cache.putJar("outer", record());
+        cache.putJar("inner", new ScanCache.JarRecord(List.of(NESTED), List.of()));
+        Assert.assertNull(cache.jar("outer"));
+        cache.putFindings(CLEAN, List.of());
+        cache.putFindings(USES, List.of(FINDING));
+        Assert.assertNull(cache.jar("outer"));
+        Assert.assertNull(cache.jar("inner"));
+        cache.putFindings(NESTED, List.of(NESTED_FINDING));
+        Assert.assertEquals(record(), cache.jar("outer"));
+        Assert.assertNull(cache.jar("unknown"));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("cache/scan.bin");
+        ScanCache cache = ScanCache.load(path, TARGETS);
+        Assert.assertNull(cache.jar("outer"));
+        fill(cache);
+        cache.save();
+        Assert.assertTrue(Files.isRegularFile(path));
+
+        ScanCache loaded = ScanCache.load(path, List.of("javax.servlet", "javax.validation"));
+        Assert.assertEquals(List.of(), loaded.findings(CLEAN));
+        Assert.assertEquals(List.of(FINDING), loaded.findings(USES));
+        ScanCache.JarRecord record = loaded.jar("outer");
+        Assert.assertEquals(record(), record);
+
+        ArrayList<ServletScanner.ScannedClass> replayed = new ArrayList<>();
+        loaded.replay("outer", record, "app.war", replayed::add);
+        Assert.assertEquals(List.of(
+                new ServletScanner.ScannedClass("app.war", "a.Uses", ServletScanner.Location.Method, ServletScanner.Detail.METHOD_PARAMETER, "javax.servlet"),
+                new ServletScanner.ScannedClass("lib/inner.jar", "b.Nested", ServletScanner.Location.Class, ServletScanner.Detail.EXTEND_CLASS, "javax.servlet")
+        ), replayed);
+
+        // 只保存这次扫描用到的条目 没有replay的jar被淘汰
+        loaded.save();
+        ScanCache reloaded = ScanCache.load(path, TARGETS);
+        Assert.assertEquals(record(), reloaded.jar("outer"));
+        Assert.assertNull(reloaded.jar("stale"));
+    }
+
+    @Test
+    public void testTargetsMismatch() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("scan.bin");
+        ScanCache cache = ScanCache.load(path, TARGETS);
+        fill(cache);
+        cache.save();
+
+        ScanCache other = ScanCache.load(path, List.of("javax.servlet"));
+        Assert.assertEquals("javax.servlet", other.targets());
+        Assert.assertNull(other.findings(USES));
+        Assert.assertNull(other.jar("outer"));
+    }
+
+    @Test
+    public void testBrokenFile() throws IOException {
+        Path path = folder.newFile("scan.bin").toPath();
+        Files.write(path, new byte[]{1, 2, 3});
+        ScanCache cache = ScanCache.load(path, TARGETS);
+        Assert.assertNull(cache.findings(CLEAN));
+    }
+
+    private static void fill(ScanCache cache) {
+        cache.putFindings(CLEAN, List.of());
+        cache.putFindings(USES, List.of(FINDING));
+        cache.putFindings(NESTED, List.of(NESTED_FINDING));
+        cache.putJar("outer", record());
+        cache.putJar("inner", new ScanCache.JarRecord(List.of(NESTED), List.of()));
+        cache.putJar("stale", new ScanCache.JarRecord(List.of(CLEAN), List.of()));
+    }
+
+    private static ScanCache.JarRecord record() {
+        return new ScanCache.JarRecord(List.of(CLEAN, USES), List.of(new ScanCache.NestedJar("lib/inner.jar", "inner")));
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.dreamlike.scanner;
+
+import java.lang.classfile.*;
+import java.lang.classfile.attribute.*;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import io.github.dreamlike.scanner.ServletScanner.Detail;
+import io.github.dreamlike.scanner.ServletScanner.Location;
+import io.github.dreamlike.scanner.ServletScanner.ScannedClass;
+
+/**
+ * ClassScanner之前基于Stream的实现 只给ClassScannerBenchmark做对照 不参与扫描
+ * 除了结果改由TargetMatcher.namespace逐位取出 其余和原来的ServletScanner.parseClass一致
+ */
+final class StreamClassScanner {
+
+    private StreamClassScanner() {
+    }
+
+    static Stream<ScannedClass> scan(String jarName, byte[] classBytes, TargetMatcher matcher) {
+        // 绝大多数类的常量池里根本没有目标字符串 直接跳过
+        // 常量池中的Utf8是modified UTF-8 目标都是ASCII 所以可以直接在原始字节里找
+        if (matcher.match(classBytes) == 0) {
+            return Stream.empty();
+        }
+        ClassModel classElement = ClassFile.of().parse(classBytes);
+        ConstantPoolFilter filter = new ConstantPoolFilter(classElement, matcher);
+        Stream<ScannedClass> classStream = parseClass(jarName, classElement, filter);
+        Stream<ScannedClass> methodStream = parseMethod(jarName, classElement, filter);
+        Stream<ScannedClass> fieldStream = parseField(jarName, classElement, filter);
+        return Stream.of(classStream, methodStream, fieldStream)
+                .flatMap(Function.identity());
+    }
+
+    private static Stream<ScannedClass> parseField(String jarName, ClassModel classElement, ConstantPoolFilter filter) {
+        String thisClass = classElement.thisClass().asInternalName().replace("/", ".");
+        return classElement.fields()
+                .stream()
+                .flatMap(f -> parseField0(jarName, thisClass, f, filter));
+    }
+
+    private static Stream<ScannedClass> parseField0(String jarName, String thisClassName, FieldModel fieldModel, ConstantPoolFilter filter) {
+        Stream<ScannedClass> typeStream = report(jarName, thisClassName, Location.Field, Detail.FIELD_TYPE, filter.mask(fieldModel.fieldType()), filter);
+        Stream<ScannedClass> genericStream = fieldModel.attributes()
+                .stream()
+                .filter(a -> a instanceof SignatureAttribute)
+                .map(a -> (SignatureAttribute) a)
+                .flatMap(a -> report(jarName, thisClassName, Location.Field, Detail.FIELD_GENERIC, filter.mask(a.signature()), filter));
+        Stream<ScannedClass> annotation = parseAnnotation(jarName, thisClassName, Location.Field, Detail.FIELD_ANNOTATION, fieldModel, filter);
+        return Stream.of(typeStream, genericStream, annotation)
+                .flatMap(Function.identity());
+    }
+
+    private static Stream<ScannedClass> parseClass(String jarName, ClassModel classElement, ConstantPoolFilter filter) {
+        String thisClass = classElement.thisClass().asInternalName().replace("/", ".");
+        //泛型
+        Stream<ScannedClass> genericStream = classElement.attributes()
+                .stream()
+                .filter(a -> a instanceof SignatureAttribute)
+                .map(a -> (SignatureAttribute) a)
+                .flatMap(a -> report(jarName, thisClass, Location.Class, Detail.CLASS_GENERIC, filter.mask(a.signature()), filter));
+        // 继承
+        Stream<ScannedClass> superClassStream = classElement.superclass()
+                .stream()
+                .flatMap(c -> report(jarName, thisClass, Location.Class, Detail.EXTEND_CLASS, filter.mask(c), filter));
+        //接口
+        Stream<ScannedClass> interfaceStream = classElement.interfaces().stream()
+                .flatMap(c -> report(jarName, thisClass, Location.Class, Detail.EXTEND_INTERFACE, filter.mask(c), filter));
+
+        // 注解
+        Stream<ScannedClass> annotationStream = parseAnnotation(jarName, thisClass, Location.Class, Detail.CLASS_ANNOTATION, classElement, filter);
+
+        //record
+        Stream<ScannedClass> recordStream = classElement.attributes()
+                .stream()
+                .filter(a -> a instanceof RecordAttribute)
+                .flatMap(a -> ((RecordAttribute) a).components().stream())
+                .flatMap(r -> report(jarName, thisClass, Location.Class, Detail.RECORD_COMPONENT, parseRecordComponent(r, filter), filter));
+        return Stream.of(genericStream, superClassStream, interfaceStream, annotationStream, recordStream)
+                .flatMap(Function.identity());
+    }
+
+    /**
+     * @return 组件的类型、泛型、注解引用到的命名空间掩码
+     */
+    private static long parseRecordComponent(RecordComponentInfo recordComponentInfo, ConstantPoolFilter filter) {
+        long rawTypeMask = filter.mask(recordComponentInfo.descriptor());
+        long signatureMask = recordComponentInfo.findAttribute(Attributes.signature())
+                .map(a -> filter.mask(a.signature()))
+                .orElse(0L);
+        long annotationMask = annotations(recordComponentInfo)
+                .mapToLong(a -> filter.mask(a.className()))
+                .reduce(0L, (a, b) -> a | b);
+        return rawTypeMask | signatureMask | annotationMask;
+    }
+
+    private static Stream<ScannedClass> parseMethod(String jarName, ClassModel classElement, ConstantPoolFilter filter) {
+        String thisClass = classElement.thisClass().asInternalName().replace("/", ".");
+        return classElement.methods()
+                .stream()
+                .flatMap(methodModel -> parseMethod0(jarName, thisClass, methodModel, filter));
+    }
+
+    private static Stream<ScannedClass> parseMethod0(String jarName, String thisClassName, MethodModel methodModel, ConstantPoolFilter filter) {
+        //泛型
+        Stream<ScannedClass> genericStream = methodModel.attributes()
+                .stream()
+                .filter(a -> a instanceof SignatureAttribute)
+                .map(a -> (SignatureAttribute) a)
+                .flatMap(a -> report(jarName, thisClassName, Location.Method, Detail.METHOD_GENERIC, filter.mask(a.signature()), filter));
+        //异常
+        Stream<ScannedClass> execptionDeclareStream = methodModel.attributes()
+                .stream()
+                .filter(a -> a instanceof ExceptionsAttribute)
+                .map(a -> (ExceptionsAttribute) a)
+                .flatMap(a -> a.exceptions().stream())
+                .flatMap(c -> report(jarName, thisClassName, Location.Method, Detail.METHOD_EXCEPTION, filter.mask(c), filter));
+        //注解
+        Stream<ScannedClass> annotationStream = parseAnnotation(jarName, thisClassName, Location.Method, Detail.METHOD_ANNOTATION, methodModel, filter);
+
+        //参数 描述符没命中就不需要再拆参数了
+        Stream<ScannedClass> parameterListStream = filter.mask(methodModel.methodType()) == 0 ? Stream.empty() : methodModel.methodTypeSymbol().parameterList()
+                .stream()
+                .flatMap(p -> report(jarName, thisClassName, Location.Method, Detail.METHOD_PARAMETER, filter.matcher().match(p.descriptorString()), filter));
+        // 方法体
+        Stream<ScannedClass> bodyStream = methodModel.findAttribute(Attributes.code())
+                .stream()
+                .flatMap(c -> report(jarName, thisClassName, Location.Method, Detail.METHOD_BODY, filter.references(c), filter));
+        return Stream.of(
+                        genericStream,
+                        execptionDeclareStream,
+                        annotationStream,
+                        parameterListStream,
+                        bodyStream
+                )
+                .flatMap(Function.identity());
+    }
+
+    private static Stream<ScannedClass> parseAnnotation(String jarName, String thisClassName, Location location, Detail detail, AttributedElement attributedElement, ConstantPoolFilter filter) {
+        return annotations(attributedElement)
+                .flatMap(a -> report(jarName, thisClassName, location, detail, filter.mask(a.className()), filter));
+    }
+
+    /**
+     * 掩码中的每个命名空间各产生一条结果
+     */
+    private static Stream<ScannedClass> report(String jarName, String className, Location location, Detail detail, long mask, ConstantPoolFilter filter) {
+        return IntStream.range(0, Long.SIZE)
+                .filter(i -> (mask & (1L << i)) != 0)
+                .mapToObj(i -> new ScannedClass(jarName, className, location, detail, filter.matcher().namespace(i)));
+    }
+
+    private static Stream<Annotation> annotations(AttributedElement attributedElement) {
+        return attributedElement.attributes()
+                .stream()
+                .filter(a -> a instanceof RuntimeVisibleAnnotationsAttribute || a instanceof RuntimeVisibleTypeAnnotationsAttribute)
+                .flatMap(a -> {
+                    if (a instanceof RuntimeVisibleAnnotationsAttribute runtimeVisibleAnnotationsAttribute) {
+                        return runtimeVisibleAnnotationsAttribute.annotations().stream();
+                    } else {
+                        RuntimeVisibleTypeAnnotationsAttribute runtimeVisibleTypeAnnotationsAttribute = (RuntimeVisibleTypeAnnotationsAttribute) a;
+                        return runtimeVisibleTypeAnnotationsAttribute.annotations().stream().map(TypeAnnotation::annotation);
+                    }
+                });
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.dreamlike.scanner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TargetMatcherTest {
+    private final TargetMatcher matcher = TargetMatcher.of(List.of("javax.servlet", "javax/ws/rs", " javax.servlet ", "javax.servlet.http"));
+
+    @Test
+    public void testNamespaces() {
+        // 统一成点分写法 去掉空白和重复
+        Assert.assertEquals(List.of("javax.servlet", "javax.ws.rs", "javax.servlet.http"), matcher.namespaces());
+        Assert.assertEquals(0b111, matcher.all());
+        Assert.assertEquals("javax.ws.rs", matcher.namespace(1));
+    }
+
+    @Test
+    public void testMatch() {
+        Assert.assertEquals(0, matcher.match("java/lang/Object"));
+        Assert.assertEquals(0b001, matcher.match("Ljavax/servlet/Filter;"));
+        Assert.assertEquals(0b001, matcher.match("javax.servlet.Filter"));
+        Assert.assertEquals(0b010, matcher.match("(Ljavax/ws/rs/core/Response;)V"));
+        // 后缀也是一个命名空间时两个都命中
+        Assert.assertEquals(0b101, matcher.match("Ljavax/servlet/http/HttpServlet;"));
+        Assert.assertEquals(0b111, matcher.match("javax.ws.rs javax.servlet.http"));
+        // 非ASCII字符回到根状态
+        Assert.assertEquals(0, matcher.match("javax.中servlet"));
+        Assert.assertEquals(0b001, matcher.match("中javax.servlet"));
+    }
+
+    @Test
+    public void testMatchBytes() {
+        Assert.assertEquals(0, matcher.match("java/lang/Object".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(0b010, matcher.match("中文javax/ws/rs/Path".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(0b111, matcher.match("javax/servlet/http javax.ws.rs".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testMatchRange() {
+        String descriptor = "(Ljavax/ws/rs/Path;Ljavax/servlet/Filter;)V";
+        int split = descriptor.indexOf(';') + 1;
+        Assert.assertEquals(0b010, matcher.match(descriptor, 0, split));
+        Assert.assertEquals(0b001, matcher.match(descriptor, split, descriptor.length()));
+        // 被截断的命名空间不算命中
+        Assert.assertEquals(0, matcher.match(descriptor, 0, split - 12));
+    }
+
+    @Test
+    public void testMaxNamespaces() {
+        ArrayList<String> targets = new ArrayList<>();
+        for (int i = 0; i < TargetMatcher.MAX_NAMESPACES; i++) {
+            targets.add("ns" + i + ".api");
+        }
+        TargetMatcher full = TargetMatcher.of(targets);
+        Assert.assertEquals(-1L, full.all());
+        Assert.assertEquals(1L << 63, full.match("ns63.api"));
+        targets.add("ns64.api");
+        try {
+            TargetMatcher.of(targets);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 超过64个命名空间
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        TargetMatcher.of(List.of(" ", ""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonAscii() {
+        TargetMatcher.of(List.of("javax.中文"));
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.dreamlike.scanner;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+public class ZipArchiveTest {
+    private static final byte[] STORED_DATA = "stored entry".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DEFLATED_DATA = "deflated entry ".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testEntries() throws IOException {
+        ZipArchive archive = ZipArchive.open(MemorySegment.ofArray(zip()));
+        List<ZipArchive.Entry> entries = archive.entries();
+        Assert.assertEquals(List.of("dir/", "a/Stored.class", "b/中文.class"), entries.stream().map(ZipArchive.Entry::name).toList());
+        Assert.assertTrue(entries.get(0).isDirectory());
+
+        ZipArchive.Entry stored = entries.get(1);
+        Assert.assertEquals(ZipArchive.STORED, stored.method());
+        Assert.assertEquals(STORED_DATA.length, stored.size());
+        Assert.assertEquals(crc(STORED_DATA), stored.crc());
+        ZipArchive.Entry deflated = entries.get(2);
+        Assert.assertEquals(ZipArchive.DEFLATED, deflated.method());
+        Assert.assertEquals(DEFLATED_DATA.length, deflated.size());
+        Assert.assertTrue(deflated.compressedSize() < deflated.size());
+        Assert.assertEquals(crc(DEFLATED_DATA), deflated.crc());
+    }
+
+    @Test
+    public void testContent() throws IOException {
+        ZipArchive archive = ZipArchive.open(MemorySegment.ofArray(zip()));
+        ZipArchive.Entry stored = archive.entries().get(1);
+        ZipArchive.Entry deflated = archive.entries().get(2);
+        Assert.assertArrayEquals(STORED_DATA, archive.bytes(stored));
+        Assert.assertArrayEquals(STORED_DATA, archive.content(stored).toArray(ValueLayout.JAVA_BYTE));
+        Assert.assertArrayEquals(DEFLATED_DATA, archive.bytes(deflated));
+        Assert.assertArrayEquals(DEFLATED_DATA, archive.content(deflated).toArray(ValueLayout.JAVA_BYTE));
+    }
+
+    /**
+     * 前面拼了别的数据（例如自解压脚本）时偏移要加上前置数据的长度
+     */
+    @Test
+    public void testPrefixedArchive() throws IOException {
+        byte[] prefix = "#!/bin/sh\nexit 0\n".getBytes(StandardCharsets.UTF_8);
+        byte[] zip = zip();
+        byte[] prefixed = new byte[prefix.length + zip.length];
+        System.arraycopy(prefix, 0, prefixed, 0, prefix.length);
+        System.arraycopy(zip, 0, prefixed, prefix.length, zip.length);
+
+        ZipArchive archive = ZipArchive.open(MemorySegment.ofArray(prefixed));
+        Assert.assertArrayEquals(STORED_DATA, archive.bytes(archive.entries().get(1)));
+        Assert.assertArrayEquals(DEFLATED_DATA, archive.bytes(archive.entries().get(2)));
+        // central directory只和条目有关 和前置数据无关
+        Assert.assertEquals(ScanCache.digest(ZipArchive.open(MemorySegment.ofArray(zip)).centralDirectory()),
+                ScanCache.digest(archive.centralDirectory()));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testNotZip() throws IOException {
+        ZipArchive.open(MemorySegment.ofArray(new byte[64]));
+    }
+
+    static byte[] zip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("dir/"));
+            zip.closeEntry();
+            ZipEntry stored = new ZipEntry("a/Stored.class");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(STORED_DATA.length);
+            stored.setCrc(crc(STORED_DATA));
+            zip.putNextEntry(stored);
+            zip.write(STORED_DATA);
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("b/中文.class"));
+            zip.write(DEFLATED_DATA);
+            zip.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
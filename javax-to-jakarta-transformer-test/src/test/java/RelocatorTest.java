@@ -0,0 +1,209 @@
+import io.github.dreamlike.agent.Relocator;
+import io.github.dreamlike.agent.Relocators;
+import io.github.dreamlike.agent.SupertypeResolver;
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不经过agent 直接调用Relocator转换内存中生成的class
+ * 测试类自己也会被agent处理 所以javax的名字都在运行时拼出来 不能写成字符串常量
+ */
+public class RelocatorTest {
+    private static final String HTTP_SERVLET = String.join("/", "javax", "servlet", "http", "HttpServlet");
+    private static final String REQUEST = String.join("/", "javax", "servlet", "http", "HttpServletRequest");
+    private static final String SERVLET_EXCEPTION = String.join("/", "javax", "servlet", "ServletException");
+
+    private final Relocator relocator = new Relocator(false, SupertypeResolver.ofClassLoader(RelocatorTest.class.getClassLoader()));
+
+    @Test
+    public void testUnchangedReturnsSameArray() {
+        byte[] plain = subclass("test/Plain", "java/lang/Object");
+        Assert.assertSame(plain, relocator.relocate(plain));
+
+        List<byte[]> result = relocator.relocateAll(List.of(plain));
+        Assert.assertEquals(1, result.size());
+        Assert.assertSame(plain, result.get(0));
+    }
+
+    @Test
+    public void testRelocate() {
+        byte[] servlet = subclass("test/Servlet", HTTP_SERVLET);
+        byte[] relocated = relocator.relocate(servlet);
+        Assert.assertNotSame(servlet, relocated);
+
+        ClassReader classReader = new ClassReader(relocated);
+        Assert.assertEquals("jakarta/servlet/http/HttpServlet", classReader.getSuperName());
+        List<String> descriptors = new ArrayList<>();
+        classReader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                descriptors.add(descriptor);
+                return null;
+            }
+        }, 0);
+        Assert.assertTrue(descriptors.toString(), descriptors.contains("(Ljakarta/servlet/http/HttpServletRequest;)V"));
+    }
+
+    /**
+     * Picker.pick中B和C在分支汇合处合并 重算栈帧时需要知道它们的公共父类A
+     * A只在这一批里 relocateAll先把批次的层级放进缓存 算出的帧才能通过校验
+     */
+    @Test
+    public void testRelocateAll() throws Exception {
+        byte[] plain = subclass("test/Plain", "java/lang/Object");
+        List<byte[]> input = List.of(plain, subclass("test/A", HTTP_SERVLET), subclass("test/B", "test/A"), subclass("test/C", "test/A"), picker());
+        List<byte[]> result = relocator.relocateAll(input);
+        Assert.assertEquals(input.size(), result.size());
+        Assert.assertSame(plain, result.get(0));
+        for (int i = 1; i < input.size(); i++) {
+            Assert.assertNotSame(input.get(i), result.get(i));
+        }
+
+        ClassLoader loader = define(result);
+        Method pick = loader.loadClass("test.Picker").getMethod("pick", boolean.class);
+        Assert.assertEquals("test.B", pick.invoke(null, true).getClass().getName());
+        Assert.assertEquals("test.C", pick.invoke(null, false).getClass().getName());
+        Assert.assertEquals("jakarta.servlet.http.HttpServlet", loader.loadClass("test.A").getSuperclass().getName());
+    }
+
+    /**
+     * fast模式原样复制栈帧 uninitialized(label)指向NEW 热力图的计数不能插在NEW前面 否则label会落在插入的ldc上
+     * 对应 new ServletException(b ? "a" : "b") NEW和构造方法调用之间有分支
+     */
+    @Test
+    public void testFastModeNewWithHeatmap() throws Exception {
+        Path dump = Files.createTempFile("heatmap", ".txt");
+        Relocator fast = Relocators.withHeatmap(true, SupertypeResolver.ofClassLoader(RelocatorTest.class.getClassLoader()), dump);
+        byte[] factory = factory();
+        byte[] relocated = fast.relocate(factory);
+        Assert.assertNotSame(factory, relocated);
+
+        Method make = define(List.of(relocated)).loadClass("test.Factory").getMethod("make", boolean.class);
+        Exception a = (Exception) make.invoke(null, true);
+        Assert.assertEquals("jakarta.servlet.ServletException", a.getClass().getName());
+        Assert.assertEquals("a", a.getMessage());
+        Assert.assertEquals("b", ((Exception) make.invoke(null, false)).getMessage());
+    }
+
+    private static ClassLoader define(List<byte[]> classFiles) {
+        Map<String, byte[]> classes = new HashMap<>();
+        for (byte[] classFile : classFiles) {
+            classes.put(new ClassReader(classFile).getClassName().replace('/', '.'), classFile);
+        }
+        return new ClassLoader(RelocatorTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] classFile = classes.get(name);
+                if (classFile == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, classFile, 0, classFile.length);
+            }
+        };
+    }
+
+    /**
+     * 只有构造方法和一个引用了HttpServletRequest的空方法
+     */
+    private static byte[] subclass(String name, String superName) {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        MethodVisitor init = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+        if (!superName.equals("java/lang/Object")) {
+            MethodVisitor handle = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "handle", "(L" + REQUEST + ";)V", null, null);
+            handle.visitCode();
+            handle.visitInsn(Opcodes.RETURN);
+            handle.visitMaxs(0, 0);
+            handle.visitEnd();
+        }
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * 带一个javax类型的字段 保证这个类会被改写 栈帧会被重算
+     * public static A pick(boolean b) { A a; if (b) a = new B(); else a = new C(); return a; }
+     */
+    private static byte[] picker() {
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Picker", null, "java/lang/Object", null);
+        classWriter.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "request", "L" + REQUEST + ";", null, null).visitEnd();
+        MethodVisitor pick = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(Z)Ltest/A;", null, null);
+        Label other = new Label();
+        Label join = new Label();
+        pick.visitCode();
+        pick.visitVarInsn(Opcodes.ILOAD, 0);
+        pick.visitJumpInsn(Opcodes.IFEQ, other);
+        newInstance(pick, "test/B");
+        pick.visitJumpInsn(Opcodes.GOTO, join);
+        pick.visitLabel(other);
+        pick.visitFrame(Opcodes.F_NEW, 1, new Object[]{Opcodes.INTEGER}, 0, null);
+        newInstance(pick, "test/C");
+        pick.visitLabel(join);
+        pick.visitFrame(Opcodes.F_NEW, 2, new Object[]{Opcodes.INTEGER, "test/A"}, 0, null);
+        pick.visitVarInsn(Opcodes.ALOAD, 1);
+        pick.visitInsn(Opcodes.ARETURN);
+        pick.visitMaxs(0, 0);
+        pick.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * public static Object make(boolean b) { return new ServletException(b ? "a" : "b"); } 栈帧手写
+     */
+    private static byte[] factory() {
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Factory", null, "java/lang/Object", null);
+        MethodVisitor make = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "make", "(Z)Ljava/lang/Object;", null, null);
+        Label newSite = new Label();
+        Label other = new Label();
+        Label join = new Label();
+        make.visitCode();
+        make.visitLabel(newSite);
+        make.visitTypeInsn(Opcodes.NEW, SERVLET_EXCEPTION);
+        make.visitInsn(Opcodes.DUP);
+        make.visitVarInsn(Opcodes.ILOAD, 0);
+        make.visitJumpInsn(Opcodes.IFEQ, other);
+        make.visitLdcInsn("a");
+        make.visitJumpInsn(Opcodes.GOTO, join);
+        make.visitLabel(other);
+        make.visitFrame(Opcodes.F_NEW, 1, new Object[]{Opcodes.INTEGER}, 2, new Object[]{newSite, newSite});
+        make.visitLdcInsn("b");
+        make.visitLabel(join);
+        make.visitFrame(Opcodes.F_NEW, 1, new Object[]{Opcodes.INTEGER}, 3, new Object[]{newSite, newSite, "java/lang/String"});
+        make.visitMethodInsn(Opcodes.INVOKESPECIAL, SERVLET_EXCEPTION, "<init>", "(Ljava/lang/String;)V", false);
+        make.visitInsn(Opcodes.ARETURN);
+        make.visitMaxs(4, 1);
+        make.visitEnd();
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+
+    private static void newInstance(MethodVisitor method, String type) {
+        method.visitTypeInsn(Opcodes.NEW, type);
+        method.visitInsn(Opcodes.DUP);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, type, "<init>", "()V", false);
+        method.visitVarInsn(Opcodes.ASTORE, 1);
+    }
+}
@@ -0,0 +1,248 @@
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 端到端启动基准 默认不运行 需要显式开启：
+ * <pre>
+ * mvn -pl javax-to-jakarta-transformer -am package
+ * mvn -pl javax-to-jakarta-transformer-test test -Dtest=StartupBenchmark -Dstartup.benchmark=true
+ * </pre>
+ * 对每个规模生成一个合成应用（其中一部分类引用javax.validation） 分别以 无agent/safe模式/fast模式 启动新的jvm
+ * 记录 到达main的时间、加载全部类并完成第一次请求的时间、被转换的类数量、RSS
+ * 全程离线 报告写到 target/startup-benchmark.md
+ * <p>
+ * 可选参数：
+ * startup.benchmark.scales 逗号分隔的类数量 默认 1000,10000,100000
+ * startup.benchmark.javaxShare 引用javax的类占比 默认 0.3
+ * startup.benchmark.runs 每种组合重复次数 取中位数 默认 3
+ * startup.benchmark.agent agent jar路径
+ */
+public class StartupBenchmark {
+    private static final Path WORK_DIR = Paths.get("target", "startup-benchmark");
+    private static final int COMPILE_BATCH = 5000;
+    private static final String[] MODES = {"none", "safe", "fast"};
+    /**
+     * 测试类自己也会被agent处理 常量里的javax.validation会先被改成jakarta 所以包名在运行时拼出来
+     */
+    private static final String VALIDATION = String.join(".", "javax", "validation");
+
+    @Test
+    public void benchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("startup.benchmark"));
+        int[] scales = Stream.of(System.getProperty("startup.benchmark.scales", "1000,10000,100000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim()))
+                .toArray();
+        double javaxShare = Double.parseDouble(System.getProperty("startup.benchmark.javaxShare", "0.3"));
+        int runs = Integer.getInteger("startup.benchmark.runs", 3);
+        Path agentJar = Paths.get(System.getProperty("startup.benchmark.agent",
+                "../javax-to-jakarta-transformer/target/javax-to-jakarta-transformer-1.0-SNAPSHOT.jar")).toAbsolutePath();
+        if (!Files.exists(agentJar)) {
+            throw new IllegalStateException("agent jar not found: " + agentJar + ", package javax-to-jakarta-transformer first");
+        }
+
+        List<String> report = new ArrayList<>();
+        report.add("# Startup benchmark");
+        report.add("");
+        report.add("javaxShare=" + javaxShare + ", runs=" + runs + ", jvm=" + System.getProperty("java.version"));
+        report.add("");
+        report.add("| classes | mode | time to main (ms) | time to first request (ms) | classes transformed | loaded classes | RSS (MB) |");
+        report.add("|---|---|---|---|---|---|---|");
+        for (int scale : scales) {
+            Path app = generate(scale, javaxShare);
+            for (String mode : MODES) {
+                long[] toMain = new long[runs];
+                long[] toRequest = new long[runs];
+                Sample last = null;
+                for (int i = 0; i < runs; i++) {
+                    last = launch(app, agentJar, mode, false);
+                    toMain[i] = last.timeToMainMillis();
+                    toRequest[i] = last.timeToRequestMillis();
+                }
+                // 注册jmx本身会拖慢启动 所以被转换的类数量单独跑一次 不计入耗时
+                long transformed = mode.equals("none") ? 0 : launch(app, agentJar, mode, true).transformed();
+                // 没有任何类被转换说明合成应用里已经没有javax引用了 这时的数据没有意义
+                if (!mode.equals("none") && javaxShare > 0 && transformed == 0) {
+                    throw new IllegalStateException("no class was transformed in " + mode + " mode, the synthetic application does not reference javax, delete " + WORK_DIR + " and retry");
+                }
+                report.add("| " + scale + " | " + mode + " | " + median(toMain) + " | " + median(toRequest) + " | "
+                        + transformed + " | " + last.loadedClasses() + " | " + (last.rssKb() < 0 ? "n/a" : last.rssKb() / 1024) + " |");
+            }
+        }
+        Path reportFile = Paths.get("target", "startup-benchmark.md");
+        Files.write(reportFile, report, StandardCharsets.UTF_8);
+        report.forEach(System.out::println);
+    }
+
+    private static Path generate(int scale, double javaxShare) throws IOException {
+        Path root = WORK_DIR.resolve(scale + "-" + javaxShare);
+        Path classes = root.resolve("classes");
+        if (Files.exists(classes.resolve("bench").resolve("Main.class"))) {
+            return classes;
+        }
+        Path src = root.resolve("src").resolve("bench");
+        Files.createDirectories(src);
+        Files.createDirectories(classes);
+        // 固定种子 保证同一组参数生成的应用完全一致
+        Random random = new Random(scale);
+        List<Path> sources = new ArrayList<>();
+        for (int i = 0; i < scale; i++) {
+            boolean javax = random.nextDouble() < javaxShare;
+            Path file = src.resolve("C" + i + ".java");
+            Files.writeString(file, javax ? javaxClass(i) : plainClass(i));
+            sources.add(file);
+        }
+        Path main = src.resolve("Main.java");
+        Files.writeString(main, mainClass(scale));
+        sources.add(main);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String classpath = classes + File.pathSeparator + System.getProperty("java.class.path");
+        for (int from = 0; from < sources.size(); from += COMPILE_BATCH) {
+            List<String> args = new ArrayList<>(Arrays.asList("-nowarn", "-proc:none", "-d", classes.toString(), "-cp", classpath));
+            for (Path source : sources.subList(from, Math.min(from + COMPILE_BATCH, sources.size()))) {
+                args.add(source.toString());
+            }
+            if (compiler.run(null, null, null, args.toArray(String[]::new)) != 0) {
+                throw new IllegalStateException("failed to compile synthetic application " + root);
+            }
+        }
+        return classes;
+    }
+
+    private static String plainClass(int i) {
+        return """
+                package bench;
+                public class C%1$d {
+                    private final java.util.List<String> names = new java.util.ArrayList<>();
+                    public static int handle(int x) {
+                        C%1$d c = new C%1$d();
+                        c.names.add(String.valueOf(x));
+                        return c.names.size() + x;
+                    }
+                }
+                """.formatted(i);
+    }
+
+    private static String javaxClass(int i) {
+        return """
+                package bench;
+                @%2$s.Valid
+                public class C%1$d implements %2$s.ConstraintValidator<%2$s.constraints.NotNull, String> {
+                    @%2$s.constraints.NotNull(message = "%2$s.constraints.NotNull")
+                    private String name;
+                    public boolean isValid(String value, %2$s.ConstraintValidatorContext context) {
+                        return value != null;
+                    }
+                    public static int handle(int x) {
+                        Object validator = new C%1$d();
+                        if (validator instanceof %2$s.ConstraintValidator) {
+                            return ((C%1$d) validator).isValid(String.valueOf(x), null) ? x + 1 : x;
+                        }
+                        return x;
+                    }
+                }
+                """.formatted(i, VALIDATION);
+    }
+
+    private static String mainClass(int scale) {
+        return """
+                package bench;
+                public class Main {
+                    public static void main(String[] args) throws Exception {
+                        System.out.println("MAIN");
+                        System.out.flush();
+                        int sum = 0;
+                        for (int i = 0; i < %1$d; i++) {
+                            Class<?> c = Class.forName("bench.C" + i);
+                            sum += (int) c.getMethod("handle", int.class).invoke(null, i);
+                        }
+                        System.out.println("REQUEST " + sum);
+                        System.out.flush();
+                        long rss = -1;
+                        java.nio.file.Path status = java.nio.file.Paths.get("/proc/self/status");
+                        if (java.nio.file.Files.exists(status)) {
+                            for (String line : java.nio.file.Files.readAllLines(status)) {
+                                if (line.startsWith("VmRSS:")) {
+                                    rss = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                                }
+                            }
+                        }
+                        long loaded = java.lang.management.ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+                        long transformed = -1;
+                        if (Boolean.getBoolean("bench.metrics")) {
+                            transformed = (Long) java.lang.management.ManagementFactory.getPlatformMBeanServer()
+                                    .getAttribute(new javax.management.ObjectName("io.github.dreamlike.agent:type=JakartaAgent"), "TransformedClassCount");
+                        }
+                        System.out.println("STATS " + loaded + " " + transformed + " " + rss);
+                    }
+                }
+                """.formatted(scale);
+    }
+
+    private static Sample launch(Path app, Path agentJar, String mode, boolean metrics) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (!mode.equals("none")) {
+            command.add("-javaagent:" + agentJar + "=jakarta.compute.frames.fast=" + mode.equals("fast") + (metrics ? ",jakarta.metrics=true" : ""));
+        }
+        command.add("-Dbench.metrics=" + metrics);
+        command.add("-cp");
+        command.add(app + File.pathSeparator + System.getProperty("java.class.path"));
+        command.add("bench.Main");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        long toMain = -1;
+        long toRequest = -1;
+        long loaded = -1;
+        long transformed = -1;
+        long rss = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals("MAIN")) {
+                    toMain = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } else if (line.startsWith("REQUEST ")) {
+                    toRequest = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } else if (line.startsWith("STATS ")) {
+                    String[] stats = line.split(" ");
+                    loaded = Long.parseLong(stats[1]);
+                    transformed = Long.parseLong(stats[2]);
+                    rss = Long.parseLong(stats[3]);
+                } else {
+                    System.err.println("[" + mode + "] " + line);
+                }
+            }
+        }
+        if (process.waitFor() != 0 || toRequest < 0) {
+            throw new IllegalStateException("benchmark jvm failed: " + String.join(" ", command));
+        }
+        return new Sample(toMain, toRequest, loaded, transformed, rss);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private record Sample(long timeToMainMillis, long timeToRequestMillis, long loadedClasses, long transformed, long rssKb) {
+    }
+}
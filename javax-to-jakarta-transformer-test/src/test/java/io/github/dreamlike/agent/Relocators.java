@@ -0,0 +1,17 @@
+package io.github.dreamlike.agent;
+
+import java.nio.file.Path;
+
+/**
+ * 给默认包里的测试构造带调用点热力图的Relocator 热力图只能由agent参数开启 相关构造方法是包内可见的
+ */
+public final class Relocators {
+    private static final int HEATMAP_SITES = 1024;
+
+    private Relocators() {
+    }
+
+    public static Relocator withHeatmap(boolean fast, SupertypeResolver resolver, Path dumpPath) {
+        return new Relocator(fast, resolver, new ClassHierarchy(), CallSiteHeatmap.create(HEATMAP_SITES, dumpPath, 3600));
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 扫描器（--allowlist）生成的白名单：需要转换的类的内部名、扫描过的所有类名的hash 以及扫描过的归档的SHA-256（整个文件）
+ * <p>
+ * 来自已知归档并且被扫描过的类只有在名单上才需要转换 其余的原样返回 不会构建ClassReader
+ * 运行时生成的类（例如用原类的ProtectionDomain定义的cglib代理）没有被扫描过 所以还要查一次类名hash
+ * 摘要都在后台线程计算 不会阻塞类加载：加载时先把classpath上的文件算一遍 之后第一次见到的位置再提交给后台线程
+ * 结果出来之前这个位置的类走完整的转换 之后每个类只有两次hash查找（位置按URL实例缓存 hashCode也缓存在URL里）和一次二分查找
+ * 不是已知归档的（目录、摘要对不上的jar、嵌套在jar里的jar、非本地的位置等）仍然走完整的转换
+ * <p>
+ * 文件格式和 javax-servlet-scanner 中的AllowlistWriter一致
+ */
+final class Allowlist {
+    static final int MAGIC = 0x4A58414C;
+    static final int VERSION = 1;
+    private static final int DIGEST_SIZE = 32;
+
+    /**
+     * 需要转换的类
+     */
+    private final Set<String> classes;
+    /**
+     * 扫描过的所有类名的hash 排好序的
+     */
+    private final long[] scanned;
+    private final Set<String> archives;
+    /**
+     * CodeSource的位置 -> 是否是已知归档 同一个jar的类共用一个URL实例 查找时先比较引用
+     * 提交给后台线程但还没算完的是false
+     */
+    private final ConcurrentHashMap<URL, Boolean> sources = new ConcurrentHashMap<>();
+    /**
+     * 本地文件 -> 是否是已知归档 只在后台线程中读写
+     */
+    private final ConcurrentHashMap<Path, Boolean> files = new ConcurrentHashMap<>();
+    private final ExecutorService digester = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jakarta-agent-allowlist");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private Allowlist(Set<String> classes, long[] scanned, Set<String> archives) {
+        this.classes = classes;
+        this.scanned = scanned;
+        this.archives = archives;
+    }
+
+    /**
+     * @return 文件不可用时返回null 即不使用白名单
+     */
+    static Allowlist load(Path path) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                System.err.println("ignore allowlist " + path + ": unsupported format");
+                return null;
+            }
+            int archiveCount = input.readInt();
+            HashSet<String> archives = new HashSet<>();
+            byte[] digest = new byte[DIGEST_SIZE];
+            for (int i = 0; i < archiveCount; i++) {
+                input.readFully(digest);
+                archives.add(HexFormat.of().formatHex(digest));
+            }
+            long[] scanned = new long[input.readInt()];
+            for (int i = 0; i < scanned.length; i++) {
+                scanned[i] = input.readLong();
+            }
+            int classCount = input.readInt();
+            HashSet<String> classes = new HashSet<>();
+            for (int i = 0; i < classCount; i++) {
+                classes.add(input.readUTF());
+            }
+            Allowlist allowlist = new Allowlist(classes, scanned, archives);
+            allowlist.digestClassPath(System.getProperty("java.class.path", ""));
+            return allowlist;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("ignore broken allowlist " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @param className 内部名
+     * @return true表示确定不需要转换
+     */
+    boolean canSkip(String className, CodeSource codeSource) {
+        if (className == null || classes.contains(className) || Arrays.binarySearch(scanned, hash(className)) < 0) {
+            return false;
+        }
+        URL location = codeSource.getLocation();
+        // 只处理本地的位置 其他协议的URL.equals可能触发域名解析
+        if (location == null || !("file".equals(location.getProtocol()) || "jar".equals(location.getProtocol()))) {
+            return false;
+        }
+        Boolean known = sources.get(location);
+        if (known == null) {
+            if (sources.putIfAbsent(location, Boolean.FALSE) == null) {
+                digester.execute(() -> sources.put(location, isKnownArchive(location)));
+            }
+            return false;
+        }
+        return known;
+    }
+
+    /**
+     * 提前在后台计算classpath上的文件 大多数情况下第一个类加载时结果已经有了
+     */
+    void digestClassPath(String classPath) {
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            digester.execute(() -> {
+                try {
+                    isKnownFile(Path.of(entry).toAbsolutePath().normalize());
+                } catch (InvalidPathException e) {
+                    // 写错的classpath 忽略
+                }
+            });
+        }
+    }
+
+    /**
+     * 64位FNV-1a 按char计算 和扫描器中的实现一致
+     */
+    static long hash(String className) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < className.length(); i++) {
+            hash ^= className.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private boolean isKnownArchive(URL url) {
+        String location = url.toExternalForm();
+        // jar:file:/x.jar!/ 只处理一层 嵌套的jar没有独立的文件
+        if (location.startsWith("jar:") && location.endsWith("!/") && location.indexOf("!/") == location.length() - 2) {
+            location = location.substring("jar:".length(), location.length() - 2);
+        }
+        if (!location.startsWith("file:")) {
+            return false;
+        }
+        try {
+            return isKnownFile(Path.of(URI.create(location)).normalize());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean isKnownFile(Path file) {
+        return files.computeIfAbsent(file, this::digest);
+    }
+
+    private boolean digest(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            try (InputStream input = Files.newInputStream(file)) {
+                byte[] buffer = new byte[1 << 16];
+                int n;
+                while ((n = input.read(buffer)) > 0) {
+                    messageDigest.update(buffer, 0, n);
+                }
+            }
+            return archives.contains(HexFormat.of().formatHex(messageDigest.digest()));
+        } catch (Exception e) {
+            // 摘要算不出来就当作未知 走完整的转换
+            System.err.println("[jakarta-agent] cannot digest " + file + ": " + e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按比例抽样转换后的类 交给一个低优先级的后台线程用ASM Analyzer做一次校验
+ * Analyzer自己推导类型 所以还要把class中记录的每个StackMapTable帧和Analyzer在同一位置推导出的帧比较
+ * 推导出的每个值都必须能赋值给帧里声明的类型 栈深度必须一致 这样写出去的帧本身出错也能发现
+ * 类加载线程只做一次随机数判断和一次非阻塞的offer 队列满了直接丢弃
+ * 校验时的类型关系来自ClassHierarchy 不会触发Class.forName
+ * 校验只读取共享的ClassHierarchy 被校验的类和缓存里没有的类放在每个样本自己的overlay里 校验结果不会影响之后的转换
+ */
+class BackgroundVerifier implements Runnable {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final Type OBJECT_TYPE = Type.getObjectType(ClassHierarchy.OBJECT_CLASS_NAME);
+
+    private final double sampleRate;
+    private final ClassHierarchy hierarchy;
+    private final TransformMetrics metrics;
+    private final ArrayBlockingQueue<Sample> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    BackgroundVerifier(double sampleRate, ClassHierarchy hierarchy, TransformMetrics metrics) {
+        this.sampleRate = sampleRate;
+        this.hierarchy = hierarchy;
+        this.metrics = metrics;
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "jakarta-agent-verifier");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    void offer(String className, byte[] classFile, SupertypeResolver resolver) {
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        metrics.verifySampled.increment();
+        if (!queue.offer(new Sample(className, classFile, resolver))) {
+            metrics.verifyDropped.increment();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Sample sample;
+            try {
+                sample = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                verify(sample);
+            } catch (Throwable t) {
+                // 解析阶段的异常同样视为校验失败 不能让后台线程退出
+                metrics.verifyFailed.increment();
+                System.err.println("[jakarta-agent] verify failed: " + sample.className() + " " + t);
+            }
+        }
+    }
+
+    private void verify(Sample sample) {
+        ClassReader classReader = new ClassReader(sample.classFile());
+        ClassNode classNode = new ClassNode();
+        classReader.accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.EXPAND_FRAMES);
+        HashMap<Integer, int[]> overlay = new HashMap<>();
+        int self = hierarchy.symbol(JakartaRelocatingClassVisitor.relocateInternalName(classNode.name));
+        overlay.put(self, hierarchy.record(self, SupertypeResolver.readClassMeta(classReader)));
+
+        Type currentClass = Type.getObjectType(classNode.name);
+        Type currentSuper = classNode.superName == null ? null : Type.getObjectType(classNode.superName);
+        List<Type> interfaces = new ArrayList<>();
+        for (String itf : classNode.interfaces) {
+            interfaces.add(Type.getObjectType(itf));
+        }
+        boolean isInterface = (classNode.access & Opcodes.ACC_INTERFACE) != 0;
+        boolean failed = false;
+        for (MethodNode method : classNode.methods) {
+            HierarchyVerifier verifier = new HierarchyVerifier(currentClass, currentSuper, interfaces, isInterface, sample.resolver(), overlay);
+            try {
+                Frame<BasicValue>[] frames = new Analyzer<>(verifier).analyze(classNode.name, method);
+                checkFrames(method, frames, verifier);
+            } catch (AnalyzerException e) {
+                failed = true;
+                System.err.println("[jakarta-agent] verify failed: " + sample.className() + "." + method.name + method.desc + " " + e.getMessage());
+            }
+        }
+        if (failed) {
+            metrics.verifyFailed.increment();
+        } else {
+            metrics.verifyPassed.increment();
+        }
+    }
+
+    /**
+     * EXPAND_FRAMES下每个FrameNode都是F_NEW 局部变量和栈中的long/double只占一项
+     * Analyzer在FrameNode的位置上已经合并了所有跳转过来的帧 不可达的代码没有推导结果 跳过
+     */
+    private static void checkFrames(MethodNode method, Frame<BasicValue>[] frames, HierarchyVerifier verifier) throws AnalyzerException {
+        for (int i = 0; i < frames.length; i++) {
+            AbstractInsnNode insn = method.instructions.get(i);
+            if (!(insn instanceof FrameNode) || frames[i] == null) {
+                continue;
+            }
+            FrameNode frameNode = (FrameNode) insn;
+            Frame<BasicValue> frame = frames[i];
+            int local = 0;
+            for (Object declared : frameNode.local) {
+                if (local >= frame.getLocals()) {
+                    throw new AnalyzerException(insn, "stack map declares too many locals");
+                }
+                BasicValue value = frame.getLocal(local);
+                if (!verifier.accepts(value, declared)) {
+                    throw new AnalyzerException(insn, "stack map local " + local + " declared " + declared + ", inferred " + value);
+                }
+                local += declared == Opcodes.LONG || declared == Opcodes.DOUBLE ? 2 : 1;
+            }
+            if (frameNode.stack.size() != frame.getStackSize()) {
+                throw new AnalyzerException(insn, "stack map declares " + frameNode.stack.size() + " stack values, inferred " + frame.getStackSize());
+            }
+            for (int j = 0; j < frame.getStackSize(); j++) {
+                BasicValue value = frame.getStack(j);
+                Object declared = frameNode.stack.get(j);
+                if (!verifier.accepts(value, declared)) {
+                    throw new AnalyzerException(insn, "stack map stack " + j + " declared " + declared + ", inferred " + value);
+                }
+            }
+        }
+    }
+
+    private record Sample(String className, byte[] classFile, SupertypeResolver resolver) {
+    }
+
+    private class HierarchyVerifier extends SimpleVerifier {
+        private final SupertypeResolver resolver;
+        private final Map<Integer, int[]> overlay;
+
+        HierarchyVerifier(Type currentClass, Type currentSuperClass, List<Type> currentClassInterfaces, boolean isInterface,
+                          SupertypeResolver resolver, Map<Integer, int[]> overlay) {
+            super(Opcodes.ASM9, currentClass, currentSuperClass, currentClassInterfaces, isInterface);
+            this.resolver = resolver;
+            this.overlay = overlay;
+        }
+
+        /**
+         * 先看overlay 再看共享的缓存 都没有时用resolver解析 结果只放进overlay
+         */
+        private int[] supertypes(int id) {
+            int[] record = overlay.get(id);
+            if (record == null) {
+                record = hierarchy.cached(id);
+            }
+            if (record == null) {
+                record = hierarchy.record(id, resolver.resolve(hierarchy.name(id)));
+                overlay.put(id, record);
+            }
+            return record;
+        }
+
+        /**
+         * @param declared FrameNode中的一项
+         * @return 推导出的值能否赋值给帧中声明的类型
+         */
+        boolean accepts(BasicValue value, Object declared) {
+            if (declared == Opcodes.TOP || declared == Opcodes.UNINITIALIZED_THIS || declared instanceof LabelNode) {
+                // SimpleVerifier不区分未初始化的对象
+                return true;
+            }
+            Type type = value.getType();
+            if (declared == Opcodes.INTEGER) {
+                return type != null && type.getSort() == Type.INT;
+            }
+            if (declared == Opcodes.FLOAT) {
+                return type != null && type.getSort() == Type.FLOAT;
+            }
+            if (declared == Opcodes.LONG) {
+                return type != null && type.getSort() == Type.LONG;
+            }
+            if (declared == Opcodes.DOUBLE) {
+                return type != null && type.getSort() == Type.DOUBLE;
+            }
+            if (type == null || (type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY)) {
+                return false;
+            }
+            if (declared == Opcodes.NULL) {
+                return "null".equals(type.getInternalName());
+            }
+            String name = (String) declared;
+            Type expected = name.charAt(0) == '[' ? Type.getType(name) : Type.getObjectType(name);
+            // 数组的元素类型是接口时同样当作Object
+            while (expected.getSort() == Type.ARRAY && type.getSort() == Type.ARRAY) {
+                expected = Type.getType(expected.getDescriptor().substring(1));
+                type = Type.getType(type.getDescriptor().substring(1));
+            }
+            return isSubTypeOf(newValue(type), newValue(expected));
+        }
+
+        @Override
+        protected boolean isInterface(Type type) {
+            return type.getSort() == Type.OBJECT && (supertypes(hierarchy.symbol(type.getInternalName()))[ClassHierarchy.FLAGS] & ClassHierarchy.INTERFACE) != 0;
+        }
+
+        @Override
+        protected Type getSuperClass(Type type) {
+            if (type.getSort() == Type.ARRAY) {
+                return OBJECT_TYPE;
+            }
+            int superId = supertypes(hierarchy.symbol(type.getInternalName()))[ClassHierarchy.SUPER];
+            return superId == ClassHierarchy.NONE ? null : Type.getObjectType(hierarchy.name(superId));
+        }
+
+        @Override
+        protected boolean isSubTypeOf(BasicValue value, BasicValue expected) {
+            Type expectedType = expected.getType();
+            Type type = value.getType();
+            if (expectedType == null || type == null
+                    || (expectedType.getSort() != Type.OBJECT && expectedType.getSort() != Type.ARRAY)
+                    || (type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY)) {
+                return super.isSubTypeOf(value, expected);
+            }
+            // 与jvm的校验器一致 接口类型当作Object处理
+            return "null".equals(type.getInternalName()) || isAssignableFrom(expectedType, type) || isInterface(expectedType);
+        }
+
+        @Override
+        protected boolean isAssignableFrom(Type type1, Type type2) {
+            if (type1.equals(type2) || type1.equals(OBJECT_TYPE)) {
+                return true;
+            }
+            if (type1.getSort() == Type.ARRAY) {
+                if (type2.getSort() != Type.ARRAY) {
+                    return false;
+                }
+                Type element1 = Type.getType(type1.getDescriptor().substring(1));
+                Type element2 = Type.getType(type2.getDescriptor().substring(1));
+                boolean references = (element1.getSort() == Type.OBJECT || element1.getSort() == Type.ARRAY)
+                        && (element2.getSort() == Type.OBJECT || element2.getSort() == Type.ARRAY);
+                return references ? isAssignableFrom(element1, element2) : element1.equals(element2);
+            }
+            if (type2.getSort() == Type.ARRAY) {
+                String name = type1.getInternalName();
+                return name.equals("java/lang/Cloneable") || name.equals("java/io/Serializable");
+            }
+            return isSubclassOrImplementation(type1.getInternalName(), type2.getInternalName());
+        }
+
+        private boolean isSubclassOrImplementation(String target, String type) {
+            int targetId = hierarchy.symbol(target);
+            int[] stack = new int[16];
+            int size = 0;
+            stack[size++] = hierarchy.symbol(type);
+            while (size > 0) {
+                int current = stack[--size];
+                if (current == targetId) {
+                    return true;
+                }
+                int[] supertypes = supertypes(current);
+                if (size + supertypes.length > stack.length) {
+                    stack = Arrays.copyOf(stack, (size + supertypes.length) << 1);
+                }
+                if (supertypes[ClassHierarchy.SUPER] != ClassHierarchy.NONE) {
+                    stack[size++] = supertypes[ClassHierarchy.SUPER];
+                }
+                for (int i = ClassHierarchy.INTERFACES; i < supertypes.length; i++) {
+                    stack[size++] = supertypes[i];
+                }
+            }
+            return false;
+        }
+    }
+}
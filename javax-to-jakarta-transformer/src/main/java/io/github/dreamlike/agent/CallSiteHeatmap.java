@@ -0,0 +1,193 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计被重定向过的javax调用点在运行期的执行次数
+ * 转换时每个被改写的 visitMethodInsn/visitFieldInsn/visitTypeInsn 分配一个site id
+ * 并在原指令前（NEW在它之后 见JakartaRelocatingClassVisitor）插入 ldc id; invokestatic CallSiteHeatmap.hit(I)V
+ * 计数器是启动时一次性分配好的LongAdder 放在实例的final数组里 通过static volatile的active找到
+ * 热路径上只有一次volatile读、一次数组读和一次LongAdder.increment
+ * <p>
+ * 一个jvm里只有一个生效的实例 再次attach时复用它 site id不会重复 容量不同时这次attach不做插桩
+ * <p>
+ * 被插桩的类需要能通过自己的classLoader看到本类 也就是agent jar所在的system classLoader
+ * 看不到的（bootstrap、不委托给system classLoader的OSGi之类）不做插桩 否则会在运行期抛NoClassDefFoundError
+ */
+public final class CallSiteHeatmap implements Runnable {
+    static final String OWNER = "io/github/dreamlike/agent/CallSiteHeatmap";
+    static final String HIT_NAME = "hit";
+    static final String HIT_DESC = "(I)V";
+
+    /**
+     * 只在create中写一次 插桩的代码只会在它写入之后执行
+     */
+    private static volatile CallSiteHeatmap active;
+
+    private final LongAdder[] counters;
+    private final String[] siteClasses;
+    private final String[] siteApis;
+    private final AtomicInteger nextSite = new AtomicInteger();
+    private final Path dumpPath;
+    private final long intervalMillis;
+
+    private CallSiteHeatmap(int capacity, Path dumpPath, long intervalSeconds) {
+        this.counters = new LongAdder[capacity];
+        for (int i = 0; i < capacity; i++) {
+            counters[i] = new LongAdder();
+        }
+        this.siteClasses = new String[capacity];
+        this.siteApis = new String[capacity];
+        this.dumpPath = dumpPath;
+        this.intervalMillis = intervalSeconds * 1000;
+    }
+
+    /**
+     * 第一次调用时创建并启动定时输出 之后的调用返回同一个实例 输出路径和间隔沿用第一次的
+     *
+     * @return 容量和已有实例不同时返回null 即不做插桩 不能让agent安装失败
+     */
+    static synchronized CallSiteHeatmap create(int capacity, Path dumpPath, long intervalSeconds) {
+        CallSiteHeatmap heatmap = active;
+        if (heatmap == null) {
+            heatmap = new CallSiteHeatmap(capacity, dumpPath, intervalSeconds);
+            heatmap.start();
+            active = heatmap;
+            return heatmap;
+        }
+        if (heatmap.counters.length != capacity) {
+            System.err.println("[jakarta-agent] call site heatmap already started with " + heatmap.counters.length
+                    + " sites, disable it for jakarta.heatmap.sites=" + capacity);
+            return null;
+        }
+        return heatmap;
+    }
+
+    /**
+     * 只供插桩后的代码调用
+     */
+    public static void hit(int site) {
+        active.counters[site].increment();
+    }
+
+    /**
+     * @return 这个classLoader能否委托到加载本类的classLoader 即插桩后的hit调用能否链接
+     */
+    static boolean isVisibleFrom(ClassLoader loader) {
+        ClassLoader agentLoader = CallSiteHeatmap.class.getClassLoader();
+        for (ClassLoader current = loader; current != null; current = current.getParent()) {
+            if (current == agentLoader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start() {
+        Thread thread = new Thread(this, "jakarta-agent-heatmap");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::dump, "jakarta-agent-heatmap-shutdown"));
+    }
+
+    /**
+     * @return site id 超出容量时返回-1 此时调用方不做插桩
+     */
+    int register(String className, int opcode, String owner, String name, String desc) {
+        int site = nextSite.getAndIncrement();
+        if (site >= siteClasses.length) {
+            return -1;
+        }
+        StringBuilder api = new StringBuilder(opcodeName(opcode)).append(' ').append(owner);
+        if (name != null) {
+            api.append('.').append(name).append(opcode <= Opcodes.PUTFIELD ? ":" : "").append(desc);
+        }
+        siteClasses[site] = className.replace('/', '.');
+        siteApis[site] = api.toString();
+        return site;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            dump();
+        }
+    }
+
+    synchronized void dump() {
+        int siteCount = Math.min(nextSite.get(), siteClasses.length);
+        LinkedHashMap<String, ArrayList<long[]>> sitesByClass = new LinkedHashMap<>();
+        HashMap<String, Long> totalByClass = new HashMap<>();
+        for (int site = 0; site < siteCount; site++) {
+            long count = counters[site].sum();
+            if (count == 0) {
+                continue;
+            }
+            sitesByClass.computeIfAbsent(siteClasses[site], k -> new ArrayList<>()).add(new long[]{site, count});
+            totalByClass.merge(siteClasses[site], count, Long::sum);
+        }
+        ArrayList<String> classes = new ArrayList<>(sitesByClass.keySet());
+        classes.sort(Comparator.comparing((String c) -> totalByClass.get(c)).reversed());
+        try {
+            Path tmp = dumpPath.resolveSibling(dumpPath.getFileName() + ".tmp");
+            if (dumpPath.getParent() != null) {
+                Files.createDirectories(dumpPath.getParent());
+            }
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tmp))) {
+                writer.println("# relocated javax call sites, hottest first");
+                for (String className : classes) {
+                    writer.println(className + " " + totalByClass.get(className));
+                    ArrayList<long[]> sites = sitesByClass.get(className);
+                    sites.sort((a, b) -> Long.compare(b[1], a[1]));
+                    for (long[] site : sites) {
+                        writer.println("    " + site[1] + " " + siteApis[(int) site[0]]);
+                    }
+                }
+            }
+            Files.move(tmp, dumpPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String opcodeName(int opcode) {
+        return switch (opcode) {
+            case Opcodes.NEW -> "NEW";
+            case Opcodes.ANEWARRAY -> "ANEWARRAY";
+            case Opcodes.CHECKCAST -> "CHECKCAST";
+            case Opcodes.INSTANCEOF -> "INSTANCEOF";
+            case Opcodes.GETSTATIC -> "GETSTATIC";
+            case Opcodes.PUTSTATIC -> "PUTSTATIC";
+            case Opcodes.GETFIELD -> "GETFIELD";
+            case Opcodes.PUTFIELD -> "PUTFIELD";
+            case Opcodes.INVOKEVIRTUAL -> "INVOKEVIRTUAL";
+            case Opcodes.INVOKESPECIAL -> "INVOKESPECIAL";
+            case Opcodes.INVOKESTATIC -> "INVOKESTATIC";
+            case Opcodes.INVOKEINTERFACE -> "INVOKEINTERFACE";
+            default -> String.valueOf(opcode);
+        };
+    }
+}
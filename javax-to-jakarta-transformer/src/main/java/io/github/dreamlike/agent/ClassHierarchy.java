@@ -0,0 +1,191 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+import java.util.Arrays;
+
+/**
+ * 类层级缓存 可以被多个ClassWriter共享
+ * 存入的父类和接口名都会先做一次javax到jakarta的映射 因为查询方（ClassWriter）看到的已经是转换后的名字
+ * <p>
+ * 类名会被intern成int类型的symbol 每个名字在堆上只保留一份
+ * 符号表按名字的hash分成STRIPES段 每段有自己的锁 并发转换的线程大多落在不同的段上 symbol的低位就是段号
+ * 每个类的层级信息是一条不可变的int数组记录：[父类, 标记, 接口...] 整条记录在一次读里拿到 之后不需要再加锁
+ * put覆盖时直接替换整条记录 不会留下无用的空间 resolver的IO在锁外进行
+ */
+class ClassHierarchy {
+    static final String OBJECT_CLASS_NAME = "java/lang/Object";
+    static final int NONE = -1;
+
+    /**
+     * 记录中的位置 接口从INTERFACES开始一直到末尾
+     */
+    static final int SUPER = 0;
+    static final int FLAGS = 1;
+    static final int INTERFACES = 2;
+    static final int INTERFACE = 1;
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int STRIPE_MASK = STRIPES - 1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    ClassHierarchy() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    int symbol(String name) {
+        int hash = name.hashCode();
+        hash ^= hash >>> 16;
+        int stripe = hash & STRIPE_MASK;
+        return (stripes[stripe].symbol(name, hash >>> STRIPE_BITS) << STRIPE_BITS) | stripe;
+    }
+
+    String name(int id) {
+        return stripes[id & STRIPE_MASK].name(id >>> STRIPE_BITS);
+    }
+
+    /**
+     * @return 父类的symbol java/lang/Object与接口返回NONE
+     */
+    int superOf(int id, SupertypeResolver resolver) {
+        return supertypes(id, resolver)[SUPER];
+    }
+
+    boolean isInterface(int id, SupertypeResolver resolver) {
+        return (supertypes(id, resolver)[FLAGS] & INTERFACE) != 0;
+    }
+
+    /**
+     * @return 不可变的记录 [父类, 标记, 接口...] 调用方不能修改
+     */
+    int[] supertypes(int id, SupertypeResolver resolver) {
+        Stripe stripe = stripes[id & STRIPE_MASK];
+        int[] record = stripe.record(id >>> STRIPE_BITS);
+        if (record != null) {
+            return record;
+        }
+        return define(id, resolver.resolve(name(id)), false);
+    }
+
+    /**
+     * 只读 没有记录时返回null 不会调用resolver
+     */
+    int[] cached(int id) {
+        return stripes[id & STRIPE_MASK].record(id >>> STRIPE_BITS);
+    }
+
+    void put(ClassMeta classMeta) {
+        define(symbol(JakartaRelocatingClassVisitor.relocateInternalName(classMeta.className())), classMeta, true);
+    }
+
+    /**
+     * 先在锁外算好整条记录（父类和接口的symbol可能在别的段上） 再在当前段的锁内放进去 不会同时持有两把锁
+     */
+    private int[] define(int id, ClassMeta classMeta, boolean overwrite) {
+        return stripes[id & STRIPE_MASK].define(id >>> STRIPE_BITS, record(id, classMeta), overwrite);
+    }
+
+    /**
+     * 只计算记录 不放进缓存 classMeta为null时当作直接继承Object的类
+     */
+    int[] record(int id, ClassMeta classMeta) {
+        String superName;
+        String[] interfaces;
+        boolean isInterface;
+        if (classMeta == null) {
+            superName = OBJECT_CLASS_NAME.equals(name(id)) ? null : OBJECT_CLASS_NAME;
+            interfaces = null;
+            isInterface = false;
+        } else {
+            superName = classMeta.superName();
+            interfaces = classMeta.interfaces();
+            isInterface = classMeta.isInterface();
+        }
+        int interfaceCount = interfaces == null ? 0 : interfaces.length;
+        int[] record = new int[INTERFACES + interfaceCount];
+        record[SUPER] = superName == null ? NONE : symbol(JakartaRelocatingClassVisitor.relocateInternalName(superName));
+        record[FLAGS] = isInterface ? INTERFACE : 0;
+        for (int i = 0; i < interfaceCount; i++) {
+            record[INTERFACES + i] = symbol(JakartaRelocatingClassVisitor.relocateInternalName(interfaces[i]));
+        }
+        return record;
+    }
+
+    /**
+     * 一段符号表 开放寻址的 name -> 段内序号 表 存放的是序号 + 1 0表示空槽
+     */
+    private static final class Stripe {
+        private String[] names = new String[INITIAL_CAPACITY];
+        private int[][] records = new int[INITIAL_CAPACITY][];
+        private int size;
+        private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+        synchronized int symbol(String name, int hash) {
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                int index = slots[slot] - 1;
+                if (names[index].equals(name)) {
+                    return index;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int index = size++;
+            if (index == names.length) {
+                names = Arrays.copyOf(names, index << 1);
+                records = Arrays.copyOf(records, index << 1);
+            }
+            names[index] = name;
+            slots[slot] = index + 1;
+            if (size * 2 > slots.length) {
+                rehash(slots.length << 1);
+            }
+            return index;
+        }
+
+        synchronized String name(int index) {
+            return names[index];
+        }
+
+        synchronized int[] record(int index) {
+            return records[index];
+        }
+
+        /**
+         * @return 最终生效的记录 不覆盖时如果别的线程已经解析过 返回它的
+         */
+        synchronized int[] define(int index, int[] record, boolean overwrite) {
+            if (overwrite || records[index] == null) {
+                records[index] = record;
+            }
+            return records[index];
+        }
+
+        private void rehash(int capacity) {
+            int[] newSlots = new int[capacity];
+            int mask = capacity - 1;
+            for (int index = 0; index < size; index++) {
+                int hash = names[index].hashCode();
+                hash ^= hash >>> 16;
+                int slot = (hash >>> STRIPE_BITS) & mask;
+                while (newSlots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newSlots[slot] = index + 1;
+            }
+            slots = newSlots;
+        }
+    }
+}
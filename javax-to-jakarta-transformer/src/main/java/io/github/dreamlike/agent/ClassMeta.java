@@ -0,0 +1,21 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+/**
+ * 计算栈帧时需要的类层级信息 所有名字都是internal name 例如 java/lang/Object
+ *
+ * @param className   当前类
+ * @param superName   父类 java/lang/Object的父类为null
+ * @param interfaces  直接实现的接口
+ * @param isInterface 当前类是否为接口
+ */
+public record ClassMeta(String className, String superName, String[] interfaces, boolean isInterface) {
+}
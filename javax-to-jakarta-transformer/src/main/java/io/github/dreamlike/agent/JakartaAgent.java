@@ -14,6 +14,8 @@ import org.objectweb.asm.*;
 import java.lang.instrument.Instrumentation;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,6 +25,18 @@ public class JakartaAgent {
 
     private static final String FAST_KEY = "jakarta.compute.frames.fast";
 
+    private static final String VERIFY_SAMPLE_RATE_KEY = "jakarta.verify.sample.rate";
+
+    private static final String METRICS_KEY = "jakarta.metrics";
+
+    private static final String HEATMAP_PATH_KEY = "jakarta.heatmap.path";
+
+    private static final String HEATMAP_INTERVAL_KEY = "jakarta.heatmap.interval";
+
+    private static final String HEATMAP_SITES_KEY = "jakarta.heatmap.sites";
+
+    private static final String ALLOWLIST_KEY = "jakarta.allowlist";
+
     public static void premain(String args, Instrumentation inst) {
         transform(args, inst);
     }
@@ -43,9 +57,36 @@ public class JakartaAgent {
                 .collect(Collectors.toMap(s -> s[0].toLowerCase(), s -> s[1], (a, b) -> a));
         return new JakartaAgentArgs(
                 argMap.get(DUMP_PATH_KEY),
-                Boolean.parseBoolean(argMap.getOrDefault(FAST_KEY, "false"))
+                Boolean.parseBoolean(argMap.getOrDefault(FAST_KEY, "false")),
+                parse(argMap, VERIFY_SAMPLE_RATE_KEY, 0.0, Double::parseDouble, rate -> rate >= 0 && rate <= 1),
+                Boolean.parseBoolean(argMap.getOrDefault(METRICS_KEY, "false")),
+                argMap.get(HEATMAP_PATH_KEY),
+                parse(argMap, HEATMAP_INTERVAL_KEY, 60L, Long::parseLong, interval -> interval > 0),
+                parse(argMap, HEATMAP_SITES_KEY, 65536, Integer::parseInt, sites -> sites >= 0),
+                argMap.get(ALLOWLIST_KEY)
         );
     }
 
-    record JakartaAgentArgs(String dumpPath, boolean fast){};
+    /**
+     * 参数写错不能让jvm启动失败 打印警告后使用默认值
+     */
+    private static <T> T parse(Map<String, String> argMap, String key, T defaultValue, Function<String, T> parser, Predicate<T> valid) {
+        String value = argMap.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            T parsed = parser.apply(value.trim());
+            if (valid.test(parsed)) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // 下面统一打印
+        }
+        System.err.println("[jakarta-agent] invalid " + key + "=" + value + ", use default " + defaultValue);
+        return defaultValue;
+    }
+
+    record JakartaAgentArgs(String dumpPath, boolean fast, double verifySampleRate, boolean metrics,
+                            String heatmapPath, long heatmapIntervalSeconds, int heatmapSites, String allowlistPath){};
 }
\ No newline at end of file
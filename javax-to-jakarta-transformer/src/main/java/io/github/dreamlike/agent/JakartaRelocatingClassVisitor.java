@@ -30,10 +30,17 @@ class JakartaRelocatingClassVisitor extends ClassVisitor {
 
     private final HashSet<String> classHandleAnnotationHandleProcessed = new HashSet<String>();
     private final HashSet<String> classHandleTypeAnnotationHandleProcessed = new HashSet<String>();
+    private final CallSiteHeatmap heatmap;
+    private String className;
     boolean needTransform;
 
     public JakartaRelocatingClassVisitor(ClassWriter classWriter) {
+        this(classWriter, null);
+    }
+
+    public JakartaRelocatingClassVisitor(ClassWriter classWriter, CallSiteHeatmap heatmap) {
         super(Opcodes.ASM9, classWriter);
+        this.heatmap = heatmap;
     }
 
     public static boolean isBinaryPrefix(String s) {
@@ -45,20 +52,27 @@ class JakartaRelocatingClassVisitor extends ClassVisitor {
         return false;
     }
 
-    private String relocateBinary(String s) {
+    static String relocateInternalName(String s) {
         if (s == null)
             return null;
         for (Map.Entry<String, String> binaryMapping : binaryMappings.entrySet()) {
             String oldName = binaryMapping.getKey();
             String newValue = binaryMapping.getValue();
             if (s.contains(oldName)) {
-                needTransform = true;
                 return s.replace(oldName, newValue);
             }
         }
         return s;
     }
 
+    private String relocateBinary(String s) {
+        String relocated = relocateInternalName(s);
+        if (relocated != s) {
+            needTransform = true;
+        }
+        return relocated;
+    }
+
     private String relocateClassName(String s) {
         if (s == null)
             return null;
@@ -115,6 +129,7 @@ class JakartaRelocatingClassVisitor extends ClassVisitor {
 
     @Override
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        className = name;
         //signature一定要改！必须跟interface保持一致
         super.visit(version, access, name, relocateSignature(signature, false), relocateBinary(superName), renameArray(interfaces));
     }
@@ -227,11 +242,35 @@ class JakartaRelocatingClassVisitor extends ClassVisitor {
         private final HashSet<String> methodHandleAnnotationProcessed = new HashSet<String>();
         private final HashSet<String> methodTypeAnnotationHandleProcessed = new HashSet<String>();
         private final HashMap<Integer, HashSet<String>> parameterAnnotationHandleProcessed = new HashMap<>();
+        private boolean instrumented;
 
         public RelocatingMethodVisitor(MethodVisitor mv) {
             super(Opcodes.ASM9, mv);
         }
 
+        /**
+         * 在被改写的指令前插入 ldc site; invokestatic CallSiteHeatmap.hit(I)V NEW例外 见visitTypeInsn
+         * 插入的指令不改变已有栈帧 但会多占用一个操作数栈槽位
+         */
+        private void countSite(int opcode, String owner, String name, String desc) {
+            if (heatmap == null) {
+                return;
+            }
+            int site = heatmap.register(className, opcode, owner, name, desc);
+            if (site < 0) {
+                return;
+            }
+            instrumented = true;
+            super.visitLdcInsn(site);
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, CallSiteHeatmap.OWNER, CallSiteHeatmap.HIT_NAME, CallSiteHeatmap.HIT_DESC, false);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            // fast模式下不会重新计算maxs
+            super.visitMaxs(instrumented ? maxStack + 1 : maxStack, maxLocals);
+        }
+
         @Override
         public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
             String afterProcess = relocateBinary(descriptor);
@@ -243,17 +282,36 @@ class JakartaRelocatingClassVisitor extends ClassVisitor {
 
         @Override
         public void visitTypeInsn(int opcode, String type) {
-            super.visitTypeInsn(opcode, relocateBinary(type));
+            String relocatedType = relocateBinary(type);
+            // fast模式原样复制栈帧 uninitialized(label)必须仍然指向NEW 所以计数放在NEW之后
+            boolean countAfter = opcode == Opcodes.NEW;
+            if (relocatedType != type && !countAfter) {
+                countSite(opcode, type, null, null);
+            }
+            super.visitTypeInsn(opcode, relocatedType);
+            if (relocatedType != type && countAfter) {
+                countSite(opcode, type, null, null);
+            }
         }
 
         @Override
         public void visitFieldInsn(int opcode, String owner, String name, String desc) {
-            super.visitFieldInsn(opcode, relocateBinary(owner), name, relocateBinary(desc));
+            String relocatedOwner = relocateBinary(owner);
+            String relocatedDesc = relocateBinary(desc);
+            if (relocatedOwner != owner || relocatedDesc != desc) {
+                countSite(opcode, owner, name, desc);
+            }
+            super.visitFieldInsn(opcode, relocatedOwner, name, relocatedDesc);
         }
 
         @Override
         public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
-            super.visitMethodInsn(opcode, relocateBinary(owner), name, relocateBinary(desc), itf);
+            String relocatedOwner = relocateBinary(owner);
+            String relocatedDesc = relocateBinary(desc);
+            if (relocatedOwner != owner || relocatedDesc != desc) {
+                countSite(opcode, owner, name, desc);
+            }
+            super.visitMethodInsn(opcode, relocatedOwner, name, relocatedDesc, itf);
         }
 
         @Override
@@ -10,24 +10,41 @@
 package io.github.dreamlike.agent;
 
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.ProtectionDomain;
-import java.util.concurrent.ConcurrentHashMap;
 
 class RelocateTransformer implements ClassFileTransformer {
     private final String DUMP_PATH;
-    private final boolean fast;
-    final ConcurrentHashMap<String, ClassMeta> classMetaMap;
+    private final Relocator relocator;
+    private final TransformMetrics metrics;
+    private final BackgroundVerifier verifier;
+    /**
+     * 没有指定或者加载失败时为null
+     */
+    private final Allowlist allowlist;
 
     RelocateTransformer(JakartaAgent.JakartaAgentArgs args) {
         DUMP_PATH = args.dumpPath();
-        this.fast = args.fast();
-        classMetaMap = new ConcurrentHashMap<>();
+        ClassHierarchy hierarchy = new ClassHierarchy();
+        CallSiteHeatmap heatmap = args.heatmapPath() == null ? null
+                : CallSiteHeatmap.create(args.heatmapSites(), Paths.get(args.heatmapPath()), args.heatmapIntervalSeconds());
+        // resolver跟随每次transform的classLoader 这里的只是占位
+        this.relocator = new Relocator(args.fast(), SupertypeResolver.ofClassLoader(null), hierarchy, heatmap);
+        this.metrics = new TransformMetrics();
+        if (args.verifySampleRate() > 0) {
+            this.verifier = new BackgroundVerifier(args.verifySampleRate(), hierarchy, metrics);
+            this.verifier.start();
+        } else {
+            this.verifier = null;
+        }
+        this.allowlist = args.allowlistPath() == null ? null : Allowlist.load(Paths.get(args.allowlistPath()));
+        if (args.metrics() || verifier != null) {
+            metrics.register();
+        }
     }
 
     @Override
@@ -35,17 +52,24 @@ class RelocateTransformer implements ClassFileTransformer {
         if (protectionDomain == null || protectionDomain.getCodeSource() == null || JakartaRelocatingClassVisitor.isBinaryPrefix(className)) {
             return classFileBuffer;
         }
+        if (allowlist != null && allowlist.canSkip(className, protectionDomain.getCodeSource())) {
+            metrics.allowlistSkipped.increment();
+            return classFileBuffer;
+        }
         ClassReader classReader = new ClassReader(classFileBuffer);
-        int flags = ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS;
-        ClassWriter classWriter = fast ? new UnSafeClassWriter(classReader, flags) : new SafeClassWriter(this, loader, classReader, flags);
-        // relocatingClassVisitor重定向后交给classWriter写出
-        JakartaRelocatingClassVisitor relocatingClassVisitor = new JakartaRelocatingClassVisitor(classWriter);
-
-        classReader.accept(relocatingClassVisitor, ClassReader.EXPAND_FRAMES);
-        if (relocatingClassVisitor.needTransform && DUMP_PATH != null) {
-            dump(className, classWriter.toByteArray());
+        SupertypeResolver resolver = SupertypeResolver.ofClassLoader(loader);
+        byte[] relocated = relocator.relocate(classReader, resolver, loader);
+        if (relocated == null) {
+            return classFileBuffer;
+        }
+        metrics.transformed.increment();
+        if (verifier != null) {
+            verifier.offer(className, relocated, resolver);
+        }
+        if (DUMP_PATH != null) {
+            dump(className, relocated);
         }
-        return relocatingClassVisitor.needTransform ? classWriter.toByteArray() : classFileBuffer;
+        return relocated;
     }
 
     void dump(String className, byte[] classfileBuffer) {
@@ -57,7 +81,4 @@ class RelocateTransformer implements ClassFileTransformer {
             e.printStackTrace();
         }
     }
-
-    record ClassMeta(String className, String superName, String[] interfaces, boolean isInterface) {
-    }
 }
\ No newline at end of file
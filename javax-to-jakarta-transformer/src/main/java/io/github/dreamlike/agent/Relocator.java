@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 不依赖javaagent的javax到jakarta转换入口 可以在自定义classLoader或者构建工具中直接使用
+ * 线程安全 同一个实例内所有转换共享类层级缓存 所以应尽量复用实例而不是每个类new一个
+ */
+public final class Relocator {
+    private final boolean fast;
+    private final SupertypeResolver resolver;
+    private final ClassHierarchy hierarchy;
+    private final CallSiteHeatmap heatmap;
+
+    /**
+     * @param fast     同 jakarta.compute.frames.fast 为true时不重新计算栈帧
+     * @param resolver safe模式下查找不在当前批次中的类的层级信息
+     */
+    public Relocator(boolean fast, SupertypeResolver resolver) {
+        this(fast, resolver, new ClassHierarchy(), null);
+    }
+
+    Relocator(boolean fast, SupertypeResolver resolver, ClassHierarchy hierarchy, CallSiteHeatmap heatmap) {
+        this.fast = fast;
+        this.resolver = Objects.requireNonNull(resolver);
+        this.hierarchy = hierarchy;
+        this.heatmap = heatmap;
+    }
+
+    public static Relocator of(ClassLoader classLoader) {
+        return new Relocator(false, SupertypeResolver.ofClassLoader(classLoader));
+    }
+
+    /**
+     * @return 不需要转换时原样返回入参
+     */
+    public byte[] relocate(byte[] classFile) {
+        byte[] relocated = relocate(new ClassReader(classFile), resolver, heatmap);
+        return relocated == null ? classFile : relocated;
+    }
+
+    /**
+     * 批量转换 会先把这一批类的层级信息放进缓存 批次内互相引用的类不需要再走resolver
+     * 每个class文件只解析一次 返回值与入参顺序一致 不需要转换的元素原样返回
+     */
+    public List<byte[]> relocateAll(Iterable<byte[]> classFiles) {
+        ArrayList<ClassReader> readers = new ArrayList<>();
+        ArrayList<byte[]> result = new ArrayList<>();
+        for (byte[] classFile : classFiles) {
+            ClassReader classReader = new ClassReader(classFile);
+            if (!fast) {
+                hierarchy.put(SupertypeResolver.readClassMeta(classReader));
+            }
+            readers.add(classReader);
+            result.add(classFile);
+        }
+        for (int i = 0; i < readers.size(); i++) {
+            byte[] relocated = relocate(readers.get(i), resolver, heatmap);
+            if (relocated != null) {
+                result.set(i, relocated);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * agent使用 classLoader看不到CallSiteHeatmap时不做插桩
+     *
+     * @return 不需要转换时返回null
+     */
+    byte[] relocate(ClassReader classReader, SupertypeResolver resolver, ClassLoader loader) {
+        return relocate(classReader, resolver, heatmap != null && CallSiteHeatmap.isVisibleFrom(loader) ? heatmap : null);
+    }
+
+    /**
+     * @return 不需要转换时返回null
+     */
+    private byte[] relocate(ClassReader classReader, SupertypeResolver resolver, CallSiteHeatmap heatmap) {
+        int flags = ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS;
+        ClassWriter classWriter = fast ? new UnSafeClassWriter(classReader, flags) : new SafeClassWriter(hierarchy, resolver, classReader, flags);
+        // relocatingClassVisitor重定向后交给classWriter写出
+        JakartaRelocatingClassVisitor relocatingClassVisitor = new JakartaRelocatingClassVisitor(classWriter, heatmap);
+        classReader.accept(relocatingClassVisitor, ClassReader.EXPAND_FRAMES);
+        return relocatingClassVisitor.needTransform ? classWriter.toByteArray() : null;
+    }
+}
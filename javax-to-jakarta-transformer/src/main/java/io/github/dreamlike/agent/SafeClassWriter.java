@@ -3,22 +3,23 @@ package io.github.dreamlike.agent;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.*;
+import java.util.Arrays;
 
-import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+import static io.github.dreamlike.agent.ClassHierarchy.NONE;
+import static io.github.dreamlike.agent.ClassHierarchy.OBJECT_CLASS_NAME;
 
 class SafeClassWriter extends ClassWriter {
-    private static final String[] defaultInterfaces = new String[]{};
-    private static final String OBJECT_CLASS_NAME = "java/lang/Object";
-    private final ClassLoader classLoader;
-    private final RelocateTransformer transformer;
-
-    public SafeClassWriter(RelocateTransformer transformer, ClassLoader classLoader, ClassReader classReader, int flags) {
+    private final ClassHierarchy hierarchy;
+    private final SupertypeResolver resolver;
+    // 遍历接口层级时复用的缓冲区 ClassWriter本身不是线程安全的 所以这里也不需要
+    private IntBuffer ancestors1;
+    private IntBuffer ancestors2;
+    private IntBuffer stack;
+
+    public SafeClassWriter(ClassHierarchy hierarchy, SupertypeResolver resolver, ClassReader classReader, int flags) {
         super(classReader, flags);
-        this.classLoader = classLoader;
-        this.transformer = transformer;
+        this.hierarchy = hierarchy;
+        this.resolver = resolver;
     }
 
     @Override
@@ -26,27 +27,33 @@ class SafeClassWriter extends ClassWriter {
         if (type1.equals(type2)) {
             return type1;
         }
-        RelocateTransformer.ClassMeta type1Meta = parseClassMeta(type1);
-        RelocateTransformer.ClassMeta type2Meta = parseClassMeta(type2);
-        if (type1Meta.isInterface() && type2Meta.isInterface()) {
-            return findCommonInterfaceSuper(type1Meta, type2Meta);
+        int type1Id = hierarchy.symbol(type1);
+        int type2Id = hierarchy.symbol(type2);
+        boolean type1IsInterface = hierarchy.isInterface(type1Id, resolver);
+        boolean type2IsInterface = hierarchy.isInterface(type2Id, resolver);
+        if (type1IsInterface && type2IsInterface) {
+            return findCommonInterfaceSuper(type1Id, type2Id);
         }
-        if (type1Meta.isInterface() || type2Meta.isInterface()) {
+        if (type1IsInterface || type2IsInterface) {
             return OBJECT_CLASS_NAME;
         }
-        return findCommonClassSuper(type1, type2);
+        return findCommonClassSuper(type1Id, type2Id);
     }
 
-    private String findCommonInterfaceSuper(RelocateTransformer.ClassMeta m1,
-                                            RelocateTransformer.ClassMeta m2) {
-
-        Set<String> ancestors1 = collectInterfaceHierarchy(m1.className());
-        Set<String> ancestors2 = collectInterfaceHierarchy(m2.className());
+    private String findCommonInterfaceSuper(int type1, int type2) {
+        if (ancestors1 == null) {
+            ancestors1 = new IntBuffer();
+            ancestors2 = new IntBuffer();
+            stack = new IntBuffer();
+        }
+        collectInterfaceHierarchy(type1, ancestors1);
+        collectInterfaceHierarchy(type2, ancestors2);
 
         // 找交集，按层级最浅者返回
-        for (String a : ancestors1) {
+        for (int i = 0; i < ancestors1.size; i++) {
+            int a = ancestors1.data[i];
             if (ancestors2.contains(a)) {
-                return a;
+                return hierarchy.name(a);
             }
         }
 
@@ -54,69 +61,53 @@ class SafeClassWriter extends ClassWriter {
         return OBJECT_CLASS_NAME;
     }
 
-    private String findCommonClassSuper(String type1, String type2) {
-
-        Set<String> ancestors = new LinkedHashSet<>();
-        String c = type1;
-
-        while (c != null) {
-            ancestors.add(c);
-            c = parseClassMeta(c).superName();
-        }
-
-        c = type2;
-        while (c != null) {
-            if (ancestors.contains(c)) {
-                return c;
+    private String findCommonClassSuper(int type1, int type2) {
+        // 继承链通常很浅 直接两重循环 不需要额外的集合
+        for (int c2 = type2; c2 != NONE; c2 = hierarchy.superOf(c2, resolver)) {
+            for (int c1 = type1; c1 != NONE; c1 = hierarchy.superOf(c1, resolver)) {
+                if (c1 == c2) {
+                    return hierarchy.name(c1);
+                }
             }
-            c = parseClassMeta(c).superName();
         }
 
         return OBJECT_CLASS_NAME;
     }
 
-    private Set<String> collectInterfaceHierarchy(String type) {
-        Set<String> result = new LinkedHashSet<>();
-        Deque<String> stack = new ArrayDeque<>();
-        stack.push(type);
-
-        while (!stack.isEmpty()) {
-            String c = stack.pop();
-            if (!result.add(c)) continue;
-            RelocateTransformer.ClassMeta meta = parseClassMeta(c);
-            for (String intf : meta.interfaces()) {
-                stack.push(intf);
+    private void collectInterfaceHierarchy(int type, IntBuffer result) {
+        result.size = 0;
+        stack.size = 0;
+        stack.add(type);
+
+        while (stack.size > 0) {
+            int c = stack.data[--stack.size];
+            if (result.contains(c)) continue;
+            result.add(c);
+            int[] supertypes = hierarchy.supertypes(c, resolver);
+            for (int i = ClassHierarchy.INTERFACES; i < supertypes.length; i++) {
+                stack.add(supertypes[i]);
             }
         }
-
-        return result;
     }
 
-    private RelocateTransformer.ClassMeta parseClassMeta(String className) {
-        RelocateTransformer.ClassMeta classMeta = transformer.classMetaMap.get(className);
-        if (classMeta != null) {
-            return classMeta;
-        }
+    private static class IntBuffer {
+        private int[] data = new int[16];
+        private int size;
 
-        try (InputStream resourceAsStream = classLoader.getResourceAsStream(className + ".class")) {
-            if (resourceAsStream == null) {
-                classMeta = defaultClassMeta(className);
-            } else {
-                byte[] classFile = resourceAsStream.readAllBytes();
-                ClassReader classReader = new ClassReader(classFile);
-                int access = classReader.getAccess();
-                classMeta = new RelocateTransformer.ClassMeta(
-                        classReader.getClassName(), classReader.getSuperName(), classReader.getInterfaces(), (access & ACC_INTERFACE) != 0
-                );
+        private void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size << 1);
             }
-        } catch (IOException e) {
-            classMeta = defaultClassMeta(className);
+            data[size++] = value;
         }
-        transformer.classMetaMap.put(className, classMeta);
-        return classMeta;
-    }
 
-    private RelocateTransformer.ClassMeta defaultClassMeta(String className) {
-        return new RelocateTransformer.ClassMeta(className, OBJECT_CLASS_NAME, defaultInterfaces, false);
+        private boolean contains(int value) {
+            for (int i = 0; i < size; i++) {
+                if (data[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
+
+/**
+ * 在safe模式下计算栈帧时 用于查找某个类的父类与接口
+ * 实现需要是线程安全的 同一个类可能会被并发查询
+ */
+@FunctionalInterface
+public interface SupertypeResolver {
+
+    /**
+     * @param internalName 例如 jakarta/servlet/GenericServlet
+     * @return 找不到时返回null 此时会按照父类为java/lang/Object的普通类处理
+     */
+    ClassMeta resolve(String internalName);
+
+    /**
+     * 通过classLoader读取对应的class文件 只解析头部信息
+     */
+    static SupertypeResolver ofClassLoader(ClassLoader classLoader) {
+        ClassLoader loader = classLoader == null ? ClassLoader.getSystemClassLoader() : classLoader;
+        return internalName -> {
+            try (InputStream resourceAsStream = loader.getResourceAsStream(internalName + ".class")) {
+                if (resourceAsStream == null) {
+                    return null;
+                }
+                return readClassMeta(new ClassReader(resourceAsStream.readAllBytes()));
+            } catch (IOException e) {
+                return null;
+            }
+        };
+    }
+
+    static ClassMeta readClassMeta(ClassReader classReader) {
+        return new ClassMeta(
+                classReader.getClassName(), classReader.getSuperName(), classReader.getInterfaces(), (classReader.getAccess() & ACC_INTERFACE) != 0
+        );
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+class TransformMetrics implements TransformMetricsMXBean {
+    static final String OBJECT_NAME = "io.github.dreamlike.agent:type=JakartaAgent";
+
+    final LongAdder transformed = new LongAdder();
+    final LongAdder verifySampled = new LongAdder();
+    final LongAdder verifyPassed = new LongAdder();
+    final LongAdder verifyFailed = new LongAdder();
+    final LongAdder verifyDropped = new LongAdder();
+    final LongAdder allowlistSkipped = new LongAdder();
+
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public long getTransformedClassCount() {
+        return transformed.sum();
+    }
+
+    @Override
+    public long getVerifySampledCount() {
+        return verifySampled.sum();
+    }
+
+    @Override
+    public long getVerifyPassedCount() {
+        return verifyPassed.sum();
+    }
+
+    @Override
+    public long getVerifyFailedCount() {
+        return verifyFailed.sum();
+    }
+
+    @Override
+    public long getVerifyDroppedCount() {
+        return verifyDropped.sum();
+    }
+
+    @Override
+    public long getAllowlistSkippedCount() {
+        return allowlistSkipped.sum();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2025 Dreamlike Ocean
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.github.dreamlike.agent;
+
+/**
+ * 注册在 io.github.dreamlike.agent:type=JakartaAgent 下 可以通过jconsole或者jmx exporter采集
+ */
+public interface TransformMetricsMXBean {
+
+    long getTransformedClassCount();
+
+    long getVerifySampledCount();
+
+    long getVerifyPassedCount();
+
+    long getVerifyFailedCount();
+
+    /**
+     * 校验队列已满而被丢弃的采样数
+     */
+    long getVerifyDroppedCount();
+
+    /**
+     * 按白名单直接跳过 没有构建ClassReader的类数
+     */
+    long getAllowlistSkippedCount();
+}